@@ -0,0 +1,133 @@
+package propra.imageconverter.bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Usage: java propra.imageconverter.bench.BenchmarkRunner [options]
+ * <p>
+ * Runs the codec benchmarks on synthetic images and prints throughput (MB/s of uncompressed image
+ * data) and allocation rate per benchmark, pattern and size.
+ * <p>
+ * Options:
+ * - --filter=<text>: only benchmarks whose name contains the text (e.g. huffman)
+ * - --patterns=<flat,noisy,gradient,photo>: image patterns (default all)
+ * - --sizes=<small,medium,large>: image sizes (default small,medium)
+ * - --warmup=<ms>: warm up time per benchmark (default 1000)
+ * - --time=<ms>: measurement time per benchmark (default 2000)
+ * <p>
+ * Every benchmark runs repeatedly during warm up (to let the JIT compile it) and is then measured
+ * for the given time. Allocations are measured with the allocation counter of the current thread
+ * (com.sun.management.ThreadMXBean), if the JVM offers it.
+ */
+public final class BenchmarkRunner {
+    private static final double MB = 1000.0 * 1000.0;
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String filter = getOption(args, "--filter=", "");
+        List<ImageGenerator.Pattern> patterns = getOptionValues(args, "--patterns=", "flat,noisy,gradient,photo")
+                .stream().map(ImageGenerator.Pattern::valueOf).collect(Collectors.toList());
+        List<ImageGenerator.Size> sizes = getOptionValues(args, "--sizes=", "small,medium")
+                .stream().map(ImageGenerator.Size::valueOf).collect(Collectors.toList());
+        long warmupMillis = Long.parseLong(getOption(args, "--warmup=", "1000"));
+        long measureMillis = Long.parseLong(getOption(args, "--time=", "2000"));
+
+        System.out.println(String.format(Locale.ROOT, "%-24s %-16s %12s %14s %14s",
+                "benchmark", "dataset", "MB/s", "alloc MB/s", "alloc B/op"));
+
+        for (ImageGenerator.Size size : sizes) {
+            for (ImageGenerator.Pattern pattern : patterns) {
+                Dataset dataset = new Dataset(pattern, size);
+                for (CodecBenchmark benchmark : CodecBenchmark.values()) {
+                    if (benchmark.toString().contains(filter)) {
+                        printResult(benchmark.toString(), dataset.toString(),
+                                measure(benchmark, dataset, warmupMillis, measureMillis));
+                    }
+                }
+            }
+        }
+        System.out.println("(sink " + CodecBenchmark.getSink() + ")");
+    }
+
+    /**
+     * Runs the benchmark for warmupMillis, then for measureMillis (at least once).
+     */
+    static Result measure(CodecBenchmark benchmark, Dataset dataset, long warmupMillis,
+                          long measureMillis) throws IOException {
+        long warmupEnd = System.nanoTime() + warmupMillis * 1_000_000;
+        while (System.nanoTime() < warmupEnd) {
+            benchmark.run(dataset);
+        }
+
+        long operations = 0;
+        long processedBytes = 0;
+        long allocatedBytesStart = getAllocatedBytes();
+        long start = System.nanoTime();
+        long measureEnd = start + measureMillis * 1_000_000;
+        do {
+            processedBytes += benchmark.run(dataset);
+            operations++;
+        } while (System.nanoTime() < measureEnd);
+        long elapsedNanos = System.nanoTime() - start;
+        long allocatedBytes = getAllocatedBytes() - allocatedBytesStart;
+
+        return new Result(operations, processedBytes, elapsedNanos,
+                allocatedBytesStart < 0 ? -1 : allocatedBytes);
+    }
+
+    static void printResult(String benchmark, String dataset, Result result) {
+        double seconds = result.elapsedNanos / 1e9;
+        String allocationRate = result.allocatedBytes < 0 ? "n/a"
+                : String.format(Locale.ROOT, "%.1f", result.allocatedBytes / MB / seconds);
+        String allocationPerOperation = result.allocatedBytes < 0 ? "n/a"
+                : String.valueOf(result.allocatedBytes / result.operations);
+        System.out.println(String.format(Locale.ROOT, "%-24s %-16s %12.1f %14s %14s",
+                benchmark, dataset, result.processedBytes / MB / seconds, allocationRate,
+                allocationPerOperation));
+    }
+
+    /**
+     * Bytes allocated by the current thread so far, -1 if the JVM does not count allocations.
+     */
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    static String getOption(String[] args, String option, String defaultValue) {
+        return Arrays.stream(args)
+                .filter(arg -> arg.startsWith(option))
+                .findAny()
+                .map(arg -> arg.substring(option.length()))
+                .orElse(defaultValue);
+    }
+
+    private static List<String> getOptionValues(String[] args, String option, String defaultValue) {
+        return Arrays.stream(getOption(args, option, defaultValue).split(","))
+                .map(value -> value.trim().toUpperCase(Locale.ROOT))
+                .collect(Collectors.toList());
+    }
+
+    static final class Result {
+        final long operations;
+        final long processedBytes;
+        final long elapsedNanos;
+        final long allocatedBytes;
+
+        Result(long operations, long processedBytes, long elapsedNanos, long allocatedBytes) {
+            this.operations = operations;
+            this.processedBytes = processedBytes;
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package propra.imageconverter.bench;
+
+import propra.imageconverter.Converter;
+import propra.imageconverter.image.ColorSequence;
+import propra.imageconverter.image.CompressionType;
+import propra.imageconverter.io.buffer.ByteHistogram;
+import propra.imageconverter.io.buffer.CountingOutputStream;
+import propra.imageconverter.io.codec.base.BaseN;
+import propra.imageconverter.io.codec.huffman.HuffmanCodec;
+import propra.imageconverter.io.codec.huffman.HuffmanInputStream;
+import propra.imageconverter.io.codec.huffman.HuffmanOutputStream;
+import propra.imageconverter.io.codec.huffman.ParallelHuffmanEncoder;
+import propra.imageconverter.io.reader.MetaDataReader;
+import propra.imageconverter.io.reader.ReaderFactory;
+import propra.imageconverter.io.reader.image.DataSegmentReader;
+import propra.imageconverter.io.reader.image.RleStrategy;
+import propra.imageconverter.io.reader.image.UncompressedTranscoder;
+import propra.imageconverter.image.MetaData;
+import propra.imageconverter.util.Checksum;
+import propra.imageconverter.util.WorkerPools;
+
+import java.io.*;
+
+/**
+ * CodecBenchmark (enum) class:
+ * Every constant benchmarks one codec or conversion path on a Dataset. run(...) processes the
+ * dataset once and returns the number of uncompressed image bytes processed (the base for MB/s).
+ * <p>
+ * The result of every run is returned via the CountingOutputStream or a checksum, so the JIT cannot
+ * remove the measured work.
+ */
+enum CodecBenchmark {
+    READ_TGA {
+        @Override
+        long run(Dataset dataset) throws IOException {
+            return readImage("tga", dataset.tgaFile);
+        }
+    },
+    READ_PROPRA {
+        @Override
+        long run(Dataset dataset) throws IOException {
+            return readImage("propra", dataset.proPraFile);
+        }
+    },
+    SWIZZLE {
+        @Override
+        long run(Dataset dataset) {
+            ColorSequence.BGR.convert(dataset.swizzlePixels, 0, ColorSequence.GBR,
+                    dataset.swizzlePixels.length / ColorSequence.BYTES_PER_PIXEL);
+            return consume(dataset.swizzlePixels[0], dataset.swizzlePixels.length);
+        }
+    },
+    TRANSCODE_UNCOMPRESSED {
+        @Override
+        long run(Dataset dataset) throws IOException {
+            // data segment of an uncompressed tga converted into the data segment of an uncompressed propra
+            CountingOutputStream output = new CountingOutputStream();
+            MetaData metaData = new MetaData(CompressionType.UNCOMPRESSED, dataset.size.width,
+                    dataset.size.height, 24, ColorSequence.BGR);
+            UncompressedTranscoder.transcode(metaData, new ByteArrayInputStream(dataset.bgrPixels), output,
+                    ColorSequence.GBR);
+            return consume(output.getCount(), dataset.bgrPixels.length);
+        }
+    },
+    RLE_ENCODE {
+        @Override
+        long run(Dataset dataset) throws IOException {
+            return consume(encodeRle(dataset, RleStrategy.GREEDY), dataset.gbrPixels.length);
+        }
+    },
+    RLE_ENCODE_OPTIMAL {
+        @Override
+        long run(Dataset dataset) throws IOException {
+            return consume(encodeRle(dataset, RleStrategy.OPTIMAL), dataset.gbrPixels.length);
+        }
+    },
+    RLE_DECODE {
+        @Override
+        long run(Dataset dataset) throws IOException {
+            CountingOutputStream output = new CountingOutputStream();
+            DataSegmentReader.read(dataset.getMetaData(CompressionType.RLE),
+                    new ByteArrayInputStream(dataset.rleDataSegment),
+                    packet -> packet.writeToUncompressedOutputStream(output, ColorSequence.GBR));
+            return consume(output.getCount(), output.getCount());
+        }
+    },
+    CONVERT_IN_MEMORY {
+        @Override
+        long run(Dataset dataset) throws IOException {
+            // whole conversion of a tga file into a rle propra file, without files
+            byte[] output = IN_MEMORY_CONVERTER.convert(dataset.tgaFile);
+            return consume(output.length, dataset.gbrPixels.length);
+        }
+    },
+    HISTOGRAM {
+        @Override
+        long run(Dataset dataset) {
+            long[] counts = new long[256];
+            ByteHistogram.count(dataset.gbrPixels, 0, dataset.gbrPixels.length, counts, HISTOGRAM_TABLES);
+            return consume(counts[0], dataset.gbrPixels.length);
+        }
+    },
+    HUFFMAN_BUILD {
+        @Override
+        long run(Dataset dataset) {
+            HuffmanCodec huffmanCodec = new HuffmanCodec(dataset.byteCounts);
+            return consume(huffmanCodec.getEncodedSize(dataset.byteCounts), dataset.gbrPixels.length);
+        }
+    },
+    HUFFMAN_ENCODE {
+        @Override
+        long run(Dataset dataset) throws IOException {
+            CountingOutputStream output = new CountingOutputStream();
+            HuffmanOutputStream huffmanOutputStream = new HuffmanOutputStream(output,
+                    new HuffmanCodec(dataset.byteCounts));
+            huffmanOutputStream.write(dataset.gbrPixels, 0, dataset.gbrPixels.length);
+            huffmanOutputStream.finish();
+            return consume(output.getCount(), dataset.gbrPixels.length);
+        }
+    },
+    HUFFMAN_ENCODE_PARALLEL {
+        @Override
+        long run(Dataset dataset) throws IOException {
+            CountingOutputStream output = new CountingOutputStream();
+            ParallelHuffmanEncoder.encode(new ByteArrayInputStream(dataset.gbrPixels), output,
+                    new HuffmanCodec(dataset.byteCounts), PARALLEL_THREADS, WorkerPools.get(PARALLEL_THREADS));
+            return consume(output.getCount(), dataset.gbrPixels.length);
+        }
+    },
+    HUFFMAN_DECODE {
+        @Override
+        long run(Dataset dataset) throws IOException {
+            // the last byte may contain padding bits, so exactly the image size is decoded
+            InputStream huffmanInputStream = new HuffmanInputStream(
+                    new ByteArrayInputStream(dataset.huffmanDataSegment));
+            byte[] bytes = new byte[64 * 1024];
+            long remaining = dataset.gbrPixels.length;
+            long sum = 0;
+            while (remaining > 0) {
+                int readBytes = huffmanInputStream.read(bytes, 0, (int) Math.min(bytes.length, remaining));
+                if (readBytes < 0) {
+                    throw new EOFException("[error] Unexpected end-of-file. Aborting.");
+                }
+                sum += bytes[0];
+                remaining -= readBytes;
+            }
+            return consume(sum, dataset.gbrPixels.length);
+        }
+    },
+    CHECKSUM {
+        @Override
+        long run(Dataset dataset) {
+            Checksum checksum = new Checksum();
+            checksum.update(dataset.gbrPixels, 0, dataset.gbrPixels.length);
+            return consume(checksum.getValue(), dataset.gbrPixels.length);
+        }
+    },
+    BASE_32_ENCODE {
+        @Override
+        long run(Dataset dataset) throws IOException {
+            return encodeToBaseN(Dataset.BASE_32_ALPHABET, dataset);
+        }
+    },
+    BASE_32_DECODE {
+        @Override
+        long run(Dataset dataset) throws IOException {
+            return decodeFromBaseN(Dataset.BASE_32_ALPHABET, dataset.base32Text);
+        }
+    },
+    BASE_64_ENCODE {
+        @Override
+        long run(Dataset dataset) throws IOException {
+            return encodeToBaseN(Dataset.BASE_64_ALPHABET, dataset);
+        }
+    },
+    BASE_64_DECODE {
+        @Override
+        long run(Dataset dataset) throws IOException {
+            return decodeFromBaseN(Dataset.BASE_64_ALPHABET, dataset.base64Text);
+        }
+    };
+
+    // threads of the parallel benchmarks (at least 2, so the blocks are stitched on one CPU too)
+    private static final int PARALLEL_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    // benchmarks run on one thread, so the count tables are reused like in a ChunkCounter
+    private static final int[] HISTOGRAM_TABLES = ByteHistogram.createTables();
+    private static final Converter IN_MEMORY_CONVERTER = Converter.builder("tga", "propra")
+            .compression(CompressionType.RLE)
+            .build();
+
+    // results of all runs, printed once so no run can be optimized away
+    private static long sink;
+
+    abstract long run(Dataset dataset) throws IOException;
+
+    static long getSink() {
+        return sink;
+    }
+
+    private static long consume(long result, long processedBytes) {
+        sink += result;
+        return processedBytes;
+    }
+
+    /**
+     * Encodes the pixels of the dataset into a rle data segment, returns its size.
+     */
+    static long encodeRle(Dataset dataset, RleStrategy rleStrategy) throws IOException {
+        CountingOutputStream output = new CountingOutputStream();
+        DataSegmentReader.read(dataset.getMetaData(CompressionType.UNCOMPRESSED),
+                new ByteArrayInputStream(dataset.gbrPixels),
+                packet -> packet.writeToRleOutputStream(output, ColorSequence.GBR), rleStrategy);
+        return output.getCount();
+    }
+
+    /**
+     * Reads meta data and data segment (including checksum verification) of an image file.
+     */
+    private static long readImage(String fileExtension, byte[] file) throws IOException {
+        MetaDataReader metaDataReader = ReaderFactory.getReaderFor(fileExtension);
+        InputStream inputStream = new ByteArrayInputStream(file);
+        MetaData metaData = metaDataReader.readMetaData(inputStream);
+        CountingOutputStream output = new CountingOutputStream();
+        DataSegmentReader.read(metaData, metaDataReader.getDataSegmentInputStream(inputStream),
+                packet -> packet.writeToUncompressedOutputStream(output, ColorSequence.GBR));
+        metaDataReader.readOnEnd();
+        return consume(output.getCount(), output.getCount());
+    }
+
+    private static long encodeToBaseN(String alphabet, Dataset dataset) throws IOException {
+        CountingOutputStream output = new CountingOutputStream();
+        new BaseN(alphabet).encodeToBaseN(new ByteArrayInputStream(dataset.gbrPixels), output);
+        return consume(output.getCount(), dataset.gbrPixels.length);
+    }
+
+    private static long decodeFromBaseN(String alphabet, byte[] text) throws IOException {
+        CountingOutputStream output = new CountingOutputStream();
+        new BaseN(alphabet).decodeFromBaseN(new ByteArrayInputStream(text), output);
+        return consume(output.getCount(), output.getCount());
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase().replace('_', '-');
+    }
+}
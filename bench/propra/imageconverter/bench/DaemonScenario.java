@@ -0,0 +1,181 @@
+package propra.imageconverter.bench;
+
+import propra.imageconverter.DaemonClient;
+import propra.imageconverter.image.ColorSequence;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static propra.imageconverter.bench.BenchmarkRunner.getOption;
+
+/**
+ * Usage: java propra.imageconverter.bench.DaemonScenario [options]
+ * <p>
+ * Compares the latency per file of many small conversions (tga to propra with rle):
+ * - daemon: all files are sent as jobs over one DaemonClient connection to a ConversionDaemon
+ * - fork: a new JVM runs ImageConverter for every file
+ * - fork client: a new JVM runs the thin DaemonClient for every file
+ * The daemon runs in a separate JVM. Forking is slow, so only the first files are converted by the
+ * forking variants.
+ * <p>
+ * Options:
+ * - --files=<n>: number of generated images (default 10000)
+ * - --forks=<n>: number of files converted by each forking variant (default 100)
+ * - --width=<n>, --height=<n>: image size in pixels (default 64x64)
+ * - --threads=<n>: worker threads of the daemon (default 1)
+ * - --directory=<path>: directory of the input and output files (default java.io.tmpdir)
+ * <p>
+ * The files are deleted at the end.
+ */
+public final class DaemonScenario {
+    private static final Pattern LISTENING = Pattern.compile("listening on [^:]+:(\\d+)");
+
+    private DaemonScenario() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int fileCount = Integer.parseInt(getOption(args, "--files=", "10000"));
+        int forkCount = Math.min(fileCount, Integer.parseInt(getOption(args, "--forks=", "100")));
+        int width = Integer.parseInt(getOption(args, "--width=", "64"));
+        int height = Integer.parseInt(getOption(args, "--height=", "64"));
+        String threads = getOption(args, "--threads=", "1");
+        Path directory = Files.createTempDirectory(
+                Paths.get(getOption(args, "--directory=", System.getProperty("java.io.tmpdir"))), "daemon");
+
+        Process daemon = null;
+        try {
+            List<Path> inputs = generateImages(directory, fileCount, width, height);
+            System.out.println(String.format(Locale.ROOT, "generated %d %dx%d tga images", fileCount, width, height));
+
+            daemon = startJava("propra.imageconverter.ImageConverter", "--daemon=0", "--threads=" + threads);
+            int port = readPort(daemon);
+
+            System.out.println(String.format(Locale.ROOT, "%-12s %7s %10s %10s %10s %10s",
+                    "variant", "files", "mean ms", "p50 ms", "p99 ms", "total s"));
+            try (DaemonClient client = new DaemonClient(port)) {
+                printLatencies("daemon", measure(inputs, input -> client.run(getJob(input))));
+            }
+            List<Path> forkInputs = inputs.subList(0, forkCount);
+            printLatencies("fork", measure(forkInputs, input ->
+                    runJava("propra.imageconverter.ImageConverter", getJob(input))));
+            printLatencies("fork client", measure(forkInputs, input ->
+                    runJava("propra.imageconverter.DaemonClient", withPort(port, getJob(input)))));
+
+            runJava("propra.imageconverter.DaemonClient", "--port=" + port, "--stop-daemon");
+            daemon.waitFor();
+        } finally {
+            if (daemon != null) {
+                daemon.destroy();
+            }
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static List<Path> generateImages(Path directory, int fileCount, int width, int height)
+            throws IOException {
+        ImageGenerator.Pattern[] patterns = ImageGenerator.Pattern.values();
+        byte[][] images = new byte[patterns.length][];
+        for (int i = 0; i < patterns.length; i++) {
+            images[i] = ImageGenerator.toTga(ImageGenerator.generatePixels(patterns[i], width, height,
+                    ColorSequence.BGR), width, height);
+        }
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < fileCount; i++) {
+            Path input = directory.resolve("image" + i + ".tga");
+            Files.write(input, images[i % images.length]);
+            inputs.add(input);
+        }
+        return inputs;
+    }
+
+    private static String[] getJob(Path input) {
+        return new String[]{"--input=" + input, "--output=" + input.resolveSibling(
+                input.getFileName().toString().replace(".tga", ".propra")), "--compression=rle"};
+    }
+
+    private static String[] withPort(int port, String[] job) {
+        String[] args = Arrays.copyOf(job, job.length + 1);
+        args[job.length] = "--port=" + port;
+        return args;
+    }
+
+    // the daemon prints its port after the warm up
+    private static int readPort(Process daemon) throws IOException {
+        BufferedReader output = new BufferedReader(new InputStreamReader(daemon.getInputStream(),
+                StandardCharsets.UTF_8));
+        String line;
+        while ((line = output.readLine()) != null) {
+            Matcher matcher = LISTENING.matcher(line);
+            if (matcher.find()) {
+                System.out.println(line);
+                return Integer.parseInt(matcher.group(1));
+            }
+        }
+        throw new IOException("[error] Daemon did not start. Aborting.");
+    }
+
+    private static Process startJava(String mainClass, String... args) throws IOException {
+        return new ProcessBuilder(getJavaCommand(mainClass, args)).redirectErrorStream(true).start();
+    }
+
+    private static void runJava(String mainClass, String... args) throws IOException {
+        try {
+            int exitCode = new ProcessBuilder(getJavaCommand(mainClass, args)).inheritIO().start().waitFor();
+            if (exitCode != 0) {
+                throw new IOException("[error] " + mainClass + " exited with " + exitCode + ". Aborting.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("[error] Scenario was interrupted. Aborting.");
+        }
+    }
+
+    private static List<String> getJavaCommand(String mainClass, String[] args) {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                mainClass));
+        command.addAll(Arrays.asList(args));
+        return command;
+    }
+
+    private interface Job {
+        void run(Path input) throws IOException;
+    }
+
+    private static long[] measure(List<Path> inputs, Job job) throws IOException {
+        long[] nanos = new long[inputs.size()];
+        for (int i = 0; i < nanos.length; i++) {
+            long startTime = System.nanoTime();
+            job.run(inputs.get(i));
+            nanos[i] = System.nanoTime() - startTime;
+        }
+        return nanos;
+    }
+
+    private static void printLatencies(String variant, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        long total = Arrays.stream(sorted).sum();
+        System.out.println(String.format(Locale.ROOT, "%-12s %7d %10.3f %10.3f %10.3f %10.1f",
+                variant, sorted.length, total / 1e6 / sorted.length, sorted[sorted.length / 2] / 1e6,
+                sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1e6, total / 1e9));
+    }
+}
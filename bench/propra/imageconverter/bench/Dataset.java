@@ -0,0 +1,82 @@
+package propra.imageconverter.bench;
+
+import propra.imageconverter.image.ColorSequence;
+import propra.imageconverter.image.CompressionType;
+import propra.imageconverter.image.MetaData;
+import propra.imageconverter.io.codec.base.BaseN;
+import propra.imageconverter.io.codec.huffman.HuffmanCodec;
+import propra.imageconverter.io.codec.huffman.HuffmanOutputStream;
+import propra.imageconverter.io.reader.image.DataSegmentReader;
+
+import java.io.*;
+
+/**
+ * A Dataset holds one synthetic image in every representation the benchmarks start from
+ * (raw pixels, files, compressed data segments, base N text). Everything is prepared once,
+ * so the benchmarks only measure the codec itself.
+ */
+final class Dataset {
+    static final String BASE_32_ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUV";
+    static final String BASE_64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    final ImageGenerator.Pattern pattern;
+    final ImageGenerator.Size size;
+
+    final byte[] gbrPixels;
+    final byte[] bgrPixels;
+    // converted in place by the swizzle benchmark, so its color sequence changes with every run
+    final byte[] swizzlePixels;
+    final byte[] tgaFile;
+    final byte[] proPraFile;
+    final byte[] rleDataSegment;
+    final byte[] huffmanDataSegment;
+    final long[] byteCounts = new long[256];
+    final byte[] base32Text;
+    final byte[] base64Text;
+
+    Dataset(ImageGenerator.Pattern pattern, ImageGenerator.Size size) throws IOException {
+        this.pattern = pattern;
+        this.size = size;
+        gbrPixels = ImageGenerator.generatePixels(pattern, size.width, size.height, ColorSequence.GBR);
+        bgrPixels = ImageGenerator.generatePixels(pattern, size.width, size.height, ColorSequence.BGR);
+        swizzlePixels = bgrPixels.clone();
+        tgaFile = ImageGenerator.toTga(bgrPixels, size.width, size.height);
+        proPraFile = ImageGenerator.toProPra(gbrPixels, size.width, size.height);
+
+        for (byte b : gbrPixels) {
+            byteCounts[Byte.toUnsignedInt(b)]++;
+        }
+
+        ByteArrayOutputStream rle = new ByteArrayOutputStream();
+        DataSegmentReader.read(getMetaData(CompressionType.UNCOMPRESSED), new ByteArrayInputStream(gbrPixels),
+                packet -> packet.writeToRleOutputStream(rle, ColorSequence.GBR));
+        rleDataSegment = rle.toByteArray();
+
+        ByteArrayOutputStream huffman = new ByteArrayOutputStream();
+        HuffmanOutputStream huffmanOutputStream = new HuffmanOutputStream(huffman, new HuffmanCodec(byteCounts));
+        huffmanOutputStream.write(gbrPixels, 0, gbrPixels.length);
+        huffmanOutputStream.finish();
+        huffmanDataSegment = huffman.toByteArray();
+
+        base32Text = encodeToBaseN(BASE_32_ALPHABET);
+        base64Text = encodeToBaseN(BASE_64_ALPHABET);
+    }
+
+    /**
+     * Meta data of the GBR pixels (or their compressed data segments).
+     */
+    MetaData getMetaData(CompressionType compressionType) {
+        return new MetaData(compressionType, size.width, size.height, 24, ColorSequence.GBR);
+    }
+
+    private byte[] encodeToBaseN(String alphabet) throws IOException {
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        new BaseN(alphabet).encodeToBaseN(new ByteArrayInputStream(gbrPixels), text);
+        return text.toByteArray();
+    }
+
+    @Override
+    public String toString() {
+        return pattern.name().toLowerCase() + "/" + size.name().toLowerCase();
+    }
+}
@@ -0,0 +1,166 @@
+package propra.imageconverter.bench;
+
+import propra.imageconverter.image.ColorSequence;
+import propra.imageconverter.image.Pixel;
+import propra.imageconverter.util.Checksum;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static propra.imageconverter.image.ColorSequence.BYTES_PER_PIXEL;
+
+/**
+ * The ImageGenerator creates synthetic images for the benchmarks.
+ * <p>
+ * The patterns cover the extremes of the codecs:
+ * - FLAT: one color (best case for rle and huffman)
+ * - NOISY: random colors (worst case for rle and huffman)
+ * - GRADIENT: smooth horizontal gradient (short runs, few distinct byte values per line)
+ * - PHOTO: smooth shapes with slight noise and some flat areas (close to real photos)
+ * <p>
+ * Images are generated with a fixed seed, so every run benchmarks the same data.
+ */
+final class ImageGenerator {
+    private static final long SEED = 42;
+
+    private ImageGenerator() {
+    }
+
+    enum Pattern {
+        FLAT {
+            @Override
+            int getPixel(int x, int y, int width, int height, Random random) {
+                return Pixel.of(40, 120, 200);
+            }
+        },
+        NOISY {
+            @Override
+            int getPixel(int x, int y, int width, int height, Random random) {
+                return random.nextInt(1 << 24);
+            }
+        },
+        GRADIENT {
+            @Override
+            int getPixel(int x, int y, int width, int height, Random random) {
+                int value = x * 255 / Math.max(1, width - 1);
+                return Pixel.of(value, 255 - value, (y * 255 / Math.max(1, height - 1)));
+            }
+        },
+        PHOTO {
+            @Override
+            int getPixel(int x, int y, int width, int height, Random random) {
+                // sky in the upper third, flat enough for runs
+                if (y < height / 3) {
+                    return Pixel.of(110, 160, 230 - y * 40 / Math.max(1, height / 3));
+                }
+                double shape = Math.sin(x * 0.05) * Math.cos(y * 0.03);
+                int noise = random.nextInt(7) - 3;
+                int r = clamp((int) (120 + 80 * shape) + noise);
+                int g = clamp((int) (100 + 60 * shape) + noise);
+                int b = clamp((int) (70 + 40 * shape) + noise);
+                return Pixel.of(r, g, b);
+            }
+        };
+
+        abstract int getPixel(int x, int y, int width, int height, Random random);
+    }
+
+    enum Size {
+        SMALL(64, 64),
+        MEDIUM(512, 512),
+        LARGE(2048, 1536);
+
+        final int width;
+        final int height;
+
+        Size(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Returns the uncompressed pixels of the image in the given color sequence.
+     */
+    static byte[] generatePixels(Pattern pattern, int width, int height, ColorSequence colorSequence) {
+        byte[] pixels = new byte[width * height * BYTES_PER_PIXEL];
+        Random random = new Random(SEED);
+        int offset = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                colorSequence.writePixel(pattern.getPixel(x, y, width, height, random), pixels, offset);
+                offset += BYTES_PER_PIXEL;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Writes an uncompressed tga file (origin upper left corner) of the pattern scanLine by scanLine,
+     * so images larger than the heap can be generated.
+     */
+    static void writeTga(Pattern pattern, int width, int height, OutputStream outputStream) throws IOException {
+        outputStream.write(getTgaHeader(width, height));
+        byte[] scanLine = new byte[width * BYTES_PER_PIXEL];
+        Random random = new Random(SEED);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                ColorSequence.BGR.writePixel(pattern.getPixel(x, y, width, height, random), scanLine,
+                        x * BYTES_PER_PIXEL);
+            }
+            outputStream.write(scanLine);
+        }
+    }
+
+    /**
+     * Returns an uncompressed tga file (origin upper left corner) of the BGR pixels.
+     */
+    static byte[] toTga(byte[] bgrPixels, int width, int height) {
+        ByteBuffer file = ByteBuffer.allocate(18 + bgrPixels.length);
+        file.put(getTgaHeader(width, height));
+        file.put(bgrPixels);
+        return file.array();
+    }
+
+    private static byte[] getTgaHeader(int width, int height) {
+        ByteBuffer header = ByteBuffer.allocate(18).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 0); // image ID
+        header.put((byte) 0); // color map type
+        header.put((byte) 2); // image type: uncompressed
+        header.put(new byte[5]); // color map specs
+        header.putShort((short) 0); // x origin
+        header.putShort((short) height); // y origin
+        header.putShort((short) width);
+        header.putShort((short) height);
+        header.put((byte) 24); // bits per pixel
+        header.put((byte) 0x20); // image descriptor: origin upper left corner
+        return header.array();
+    }
+
+    /**
+     * Returns an uncompressed propra file of the GBR pixels.
+     */
+    static byte[] toProPra(byte[] gbrPixels, int width, int height) {
+        Checksum checksum = new Checksum();
+        checksum.update(gbrPixels, 0, gbrPixels.length);
+
+        ByteBuffer file = ByteBuffer.allocate(28 + gbrPixels.length).order(ByteOrder.LITTLE_ENDIAN);
+        file.put("ProPraWS19".getBytes(StandardCharsets.US_ASCII));
+        file.putShort((short) width);
+        file.putShort((short) height);
+        file.put((byte) 24); // bits per pixel
+        file.put((byte) 0); // compression: uncompressed
+        file.putLong(gbrPixels.length);
+        file.putInt(checksum.getValue());
+        file.put(gbrPixels);
+        return file.array();
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,116 @@
+package propra.imageconverter.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static propra.imageconverter.bench.BenchmarkRunner.getOption;
+import static propra.imageconverter.image.ColorSequence.BYTES_PER_PIXEL;
+
+/**
+ * Usage: java propra.imageconverter.bench.LargeImageScenario [options]
+ * <p>
+ * Checks that images larger than the heap are converted within a fixed memory budget.
+ * A synthetic uncompressed tga file of the given size is generated scanLine by scanLine
+ * (65535 pixels wide, the height follows from the size). It is converted into a propra file
+ * by a separate JVM with a small heap. The scenario fails if a conversion fails (e.g. with an
+ * OutOfMemoryError).
+ * <p>
+ * Options:
+ * - --gigabytes=<n>: uncompressed image size in GB (default 10, at most 12.8)
+ * - --pattern=<flat|noisy|gradient|photo>: image pattern (default photo)
+ * - --compressions=<uncompressed,rle,huffman,auto>: output compressions (default huffman)
+ * - --heap=<size>: max. heap size of the converting JVM (default 256m)
+ * - --max-memory=<size>: memory budget of the conversion (default 192m)
+ * - --threads=<n>: threads of the conversion (default 1)
+ * - --io=<stream|mapped>: io backend of the conversion (default stream)
+ * - --directory=<path>: directory of the input and output files (default java.io.tmpdir)
+ * <p>
+ * The files are deleted at the end. Huffman and auto compression need a temporary file of the
+ * image size in addition.
+ */
+public final class LargeImageScenario {
+    private static final int WIDTH = 65535;
+    private static final double MB = 1000.0 * 1000.0;
+
+    private LargeImageScenario() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        double gigabytes = Double.parseDouble(getOption(args, "--gigabytes=", "10"));
+        ImageGenerator.Pattern pattern = ImageGenerator.Pattern.valueOf(
+                getOption(args, "--pattern=", "photo").toUpperCase(Locale.ROOT));
+        List<String> compressions = Arrays.asList(getOption(args, "--compressions=", "huffman").split(","));
+        String heap = getOption(args, "--heap=", "256m");
+        String maxMemory = getOption(args, "--max-memory=", "192m");
+        String threads = getOption(args, "--threads=", "1");
+        String io = getOption(args, "--io=", "stream");
+        Path directory = Paths.get(getOption(args, "--directory=", System.getProperty("java.io.tmpdir")));
+
+        long scanLineBytes = (long) WIDTH * BYTES_PER_PIXEL;
+        int height = (int) Math.min(65535, Math.max(1, Math.round(gigabytes * 1000 * MB / scanLineBytes)));
+        long imageBytes = scanLineBytes * height;
+
+        Path input = directory.resolve("large_" + pattern.name().toLowerCase(Locale.ROOT) + ".tga");
+        boolean failed = false;
+        try {
+            long startTime = System.nanoTime();
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(input), 1024 * 1024)) {
+                ImageGenerator.writeTga(pattern, WIDTH, height, outputStream);
+            }
+            System.out.println(String.format(Locale.ROOT, "generated %dx%d %s image (%.1f GB) in %.1f s",
+                    WIDTH, height, pattern.name().toLowerCase(Locale.ROOT), imageBytes / (1000 * MB),
+                    (System.nanoTime() - startTime) / 1e9));
+            System.out.println(String.format(Locale.ROOT, "%-14s %6s %10s %10s %14s",
+                    "compression", "exit", "seconds", "MB/s", "output MB"));
+
+            for (String compression : compressions) {
+                failed |= !convert(input, directory.resolve("large_" + compression + ".propra"), compression,
+                        heap, maxMemory, threads, io, imageBytes);
+            }
+        } finally {
+            Files.deleteIfExists(input);
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Converts input in a separate JVM with the given heap size and prints the result.
+     * Returns true if the conversion succeeded.
+     */
+    private static boolean convert(Path input, Path output, String compression, String heap, String maxMemory,
+                                   String threads, String io, long imageBytes)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xmx" + heap,
+                "-cp", System.getProperty("java.class.path"),
+                "propra.imageconverter.ImageConverter",
+                "--input=" + input,
+                "--output=" + output,
+                "--compression=" + compression,
+                "--max-memory=" + maxMemory,
+                "--threads=" + threads,
+                "--io=" + io));
+        try {
+            long startTime = System.nanoTime();
+            int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            long outputBytes = Files.exists(output) ? Files.size(output) : 0;
+            System.out.println(String.format(Locale.ROOT, "%-14s %6d %10.1f %10.1f %14.1f",
+                    compression, exitCode, seconds, imageBytes / MB / seconds, outputBytes / MB));
+            return exitCode == 0;
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+}
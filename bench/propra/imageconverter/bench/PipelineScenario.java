@@ -0,0 +1,160 @@
+package propra.imageconverter.bench;
+
+import propra.imageconverter.image.ColorSequence;
+import propra.imageconverter.image.CompressionType;
+import propra.imageconverter.io.buffer.CountingOutputStream;
+import propra.imageconverter.io.buffer.Pipeline;
+import propra.imageconverter.io.codec.huffman.HuffmanCodec;
+import propra.imageconverter.io.codec.huffman.HuffmanOutputStream;
+import propra.imageconverter.io.reader.image.DataSegmentReader;
+
+import java.io.*;
+import java.util.Locale;
+
+import static propra.imageconverter.bench.BenchmarkRunner.getOption;
+
+/**
+ * Usage: java propra.imageconverter.bench.PipelineScenario [options]
+ * <p>
+ * Compares the wall clock time of conversions with and without Pipeline on a slow device.
+ * The input and output streams are throttled to the given throughput (the calling thread sleeps
+ * like a thread waiting for a disk), so the pipeline can overlap the waiting with the conversion.
+ * <p>
+ * Options:
+ * - --pattern=<flat|noisy|gradient|photo>: image pattern (default photo)
+ * - --size=<small|medium|large>: image size (default large)
+ * - --device=<MB/s>: throughput of the emulated device (default 100, a spinning disk)
+ * - --runs=<n>: runs per conversion, the fastest run is reported (default 5)
+ */
+public final class PipelineScenario {
+    private static final double MB = 1000.0 * 1000.0;
+
+    private PipelineScenario() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        ImageGenerator.Pattern pattern = ImageGenerator.Pattern.valueOf(
+                getOption(args, "--pattern=", "photo").toUpperCase(Locale.ROOT));
+        ImageGenerator.Size size = ImageGenerator.Size.valueOf(
+                getOption(args, "--size=", "large").toUpperCase(Locale.ROOT));
+        double deviceMegabytesPerSecond = Double.parseDouble(getOption(args, "--device=", "100"));
+        int runs = Integer.parseInt(getOption(args, "--runs=", "5"));
+        Dataset dataset = new Dataset(pattern, size);
+
+        Pipeline.Stage rleEncoding = (input, output) ->
+                DataSegmentReader.read(dataset.getMetaData(CompressionType.UNCOMPRESSED), input,
+                        packet -> packet.writeToRleOutputStream(output, ColorSequence.GBR));
+        Pipeline.Stage huffmanEncoding = (input, output) -> {
+            HuffmanOutputStream huffmanOutputStream = new HuffmanOutputStream(output,
+                    new HuffmanCodec(dataset.byteCounts));
+            DataSegmentReader.read(dataset.getMetaData(CompressionType.UNCOMPRESSED), input,
+                    packet -> packet.writeToUncompressedOutputStream(huffmanOutputStream, ColorSequence.GBR));
+            huffmanOutputStream.finish();
+        };
+
+        System.out.println(String.format(Locale.ROOT, "%s, device %.0f MB/s", dataset, deviceMegabytesPerSecond));
+        System.out.println(String.format(Locale.ROOT, "%-10s %14s %14s %10s", "stage", "direct ms", "pipeline ms",
+                "speedup"));
+        printComparison("rle", rleEncoding, dataset, deviceMegabytesPerSecond, runs);
+        printComparison("huffman", huffmanEncoding, dataset, deviceMegabytesPerSecond, runs);
+    }
+
+    private static void printComparison(String name, Pipeline.Stage stage, Dataset dataset,
+                                        double deviceMegabytesPerSecond, int runs) throws IOException {
+        long directNanos = Long.MAX_VALUE;
+        long pipelineNanos = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            directNanos = Math.min(directNanos, run(stage, dataset, deviceMegabytesPerSecond, false));
+            pipelineNanos = Math.min(pipelineNanos, run(stage, dataset, deviceMegabytesPerSecond, true));
+        }
+        System.out.println(String.format(Locale.ROOT, "%-10s %14.1f %14.1f %9.2fx", name, directNanos / 1e6,
+                pipelineNanos / 1e6, (double) directNanos / pipelineNanos));
+    }
+
+    private static long run(Pipeline.Stage stage, Dataset dataset, double deviceMegabytesPerSecond,
+                            boolean pipelined) throws IOException {
+        InputStream input = new ThrottledInputStream(new ByteArrayInputStream(dataset.gbrPixels),
+                deviceMegabytesPerSecond);
+        OutputStream output = new ThrottledOutputStream(new CountingOutputStream(), deviceMegabytesPerSecond);
+        long startTime = System.nanoTime();
+        if (pipelined) {
+            Pipeline.run(input, output, stage);
+        } else {
+            stage.run(input, output);
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    /**
+     * Emulated device: transfers are collected and the calling thread sleeps for the time the device needs
+     * for every 64 KiB (so the number of small reads and writes does not matter).
+     */
+    private static class Device {
+        private static final int TRANSFER_SIZE = 64 * 1024;
+        private final double megabytesPerSecond;
+        private long pendingBytes;
+
+        Device(double megabytesPerSecond) {
+            this.megabytesPerSecond = megabytesPerSecond;
+        }
+
+        void transfer(long length) throws InterruptedIOException {
+            pendingBytes += length;
+            if (pendingBytes < TRANSFER_SIZE) {
+                return;
+            }
+            long nanos = (long) (pendingBytes / (megabytesPerSecond * MB) * 1e9);
+            pendingBytes = 0;
+            try {
+                Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("[error] Conversion was interrupted. Aborting.");
+            }
+        }
+    }
+
+    private static class ThrottledInputStream extends FilterInputStream {
+        private final Device device;
+
+        ThrottledInputStream(InputStream inputStream, double deviceMegabytesPerSecond) {
+            super(inputStream);
+            this.device = new Device(deviceMegabytesPerSecond);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            device.transfer(b < 0 ? 0 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) throws IOException {
+            int readBytes = super.read(bytes, off, len);
+            device.transfer(Math.max(0, readBytes));
+            return readBytes;
+        }
+    }
+
+    private static class ThrottledOutputStream extends FilterOutputStream {
+        private final Device device;
+
+        ThrottledOutputStream(OutputStream outputStream, double deviceMegabytesPerSecond) {
+            super(outputStream);
+            this.device = new Device(deviceMegabytesPerSecond);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            device.transfer(1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            out.write(bytes, off, len);
+            device.transfer(len);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package propra.imageconverter.bench;
+
+import propra.imageconverter.io.reader.image.RleStrategy;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import static propra.imageconverter.bench.BenchmarkRunner.getOption;
+
+/**
+ * Usage: java propra.imageconverter.bench.RleStrategyScenario [options]
+ * <p>
+ * Compares the rle strategies per pattern and size: size of the rle data segment (and the bytes
+ * saved by RleStrategy.OPTIMAL) and the encoding throughput of both strategies.
+ * <p>
+ * Options:
+ * - --sizes=<small,medium,large>: image sizes (default small,medium)
+ * - --warmup=<ms>: warm up time per benchmark (default 1000)
+ * - --time=<ms>: measurement time per benchmark (default 2000)
+ */
+public final class RleStrategyScenario {
+    private static final double MB = 1000.0 * 1000.0;
+
+    private RleStrategyScenario() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String[] sizes = getOption(args, "--sizes=", "small,medium").split(",");
+        long warmupMillis = Long.parseLong(getOption(args, "--warmup=", "1000"));
+        long measureMillis = Long.parseLong(getOption(args, "--time=", "2000"));
+
+        System.out.println(String.format(Locale.ROOT, "%-16s %14s %14s %10s %12s %12s %8s",
+                "dataset", "greedy bytes", "optimal bytes", "saved %", "greedy MB/s", "optimal MB/s", "cost"));
+        for (String size : sizes) {
+            for (ImageGenerator.Pattern pattern : ImageGenerator.Pattern.values()) {
+                Dataset dataset = new Dataset(pattern,
+                        ImageGenerator.Size.valueOf(size.trim().toUpperCase(Locale.ROOT)));
+                long greedyBytes = CodecBenchmark.encodeRle(dataset, RleStrategy.GREEDY);
+                long optimalBytes = CodecBenchmark.encodeRle(dataset, RleStrategy.OPTIMAL);
+                double greedyThroughput = getThroughput(BenchmarkRunner.measure(CodecBenchmark.RLE_ENCODE,
+                        dataset, warmupMillis, measureMillis));
+                double optimalThroughput = getThroughput(BenchmarkRunner.measure(CodecBenchmark.RLE_ENCODE_OPTIMAL,
+                        dataset, warmupMillis, measureMillis));
+                System.out.println(String.format(Locale.ROOT, "%-16s %14d %14d %10.3f %12.1f %12.1f %7.2fx",
+                        dataset, greedyBytes, optimalBytes, 100.0 * (greedyBytes - optimalBytes) / greedyBytes,
+                        greedyThroughput, optimalThroughput, greedyThroughput / optimalThroughput));
+            }
+        }
+        System.out.println("(sink " + CodecBenchmark.getSink() + ")");
+    }
+
+    private static double getThroughput(BenchmarkRunner.Result result) {
+        return result.processedBytes / MB / (result.elapsedNanos / 1e9);
+    }
+}
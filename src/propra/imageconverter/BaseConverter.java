@@ -2,14 +2,21 @@ package propra.imageconverter;
 
 import propra.imageconverter.io.codec.base.BaseN;
 import propra.imageconverter.io.codec.base.CodecType;
+import propra.imageconverter.io.codec.base.ParallelBaseN;
 import propra.imageconverter.util.CliHelper;
 import propra.imageconverter.util.Validator;
+import propra.imageconverter.util.WorkerPools;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 
 import static propra.imageconverter.util.CliHelper.hasBaseNDecodeOption;
 import static propra.imageconverter.util.CliHelper.hasBaseNEncodeOption;
+import static java.nio.file.StandardOpenOption.*;
 
 class BaseConverter {
     private static final String BASE32_HEX_ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUV";
@@ -80,27 +87,50 @@ class BaseConverter {
 
     private static void decode(String[] args, String inputPath, String outputFilePath,
                                String alphabet) throws IOException {
+        int threads = CliHelper.getThreadCount(args);
+        if (threads > 1) {
+            decodeParallel(args, inputPath, outputFilePath, alphabet, threads);
+            return;
+        }
         try (OutputStream outputStream = new BufferedOutputStream(
                 new FileOutputStream(outputFilePath)
         );
-             Reader reader = new BufferedReader(
-                     new InputStreamReader(new FileInputStream(
-                             new File(inputPath)), StandardCharsets.UTF_8)
+             InputStream inputStream = new BufferedInputStream(
+                     new FileInputStream(new File(inputPath))
              )) {
 
             // case base N decode option
             if (hasBaseNDecodeOption(args)) {
-                alphabet = getAlphabetFrom(reader);
+                alphabet = getAlphabetFrom(inputStream);
+            }
+            new BaseN(alphabet).decodeFromBaseN(inputStream, outputStream);
+        }
+    }
+
+    /**
+     * Decodes blocks of the file with several threads, see ParallelBaseN.
+     */
+    private static void decodeParallel(String[] args, String inputPath, String outputFilePath,
+                                       String alphabet, int threads) throws IOException {
+        try (FileChannel input = FileChannel.open(Paths.get(inputPath), READ);
+             FileChannel output = FileChannel.open(Paths.get(outputFilePath), CREATE, TRUNCATE_EXISTING, WRITE)) {
+
+            long dataPosition = 0;
+            // case base N decode option: characters start after the alphabet line
+            if (hasBaseNDecodeOption(args)) {
+                alphabet = getAlphabetFrom(new BufferedInputStream(Channels.newInputStream(input)));
+                dataPosition = Math.min(alphabet.length() + 1, input.size());
             }
-            new BaseN(alphabet).decodeFromBaseN(reader, outputStream);
+            ParallelBaseN.decode(new BaseN(alphabet), input, dataPosition, input.size() - dataPosition,
+                    output, 0, threads, WorkerPools.get(threads));
         }
     }
 
-    private static String getAlphabetFrom(Reader reader) throws IOException {
+    private static String getAlphabetFrom(InputStream inputStream) throws IOException {
         StringBuilder alphabetBuilder = new StringBuilder();
         int readByte;
         // Read alphabet in first line byte by byte
-        while ((readByte = reader.read()) >= 0) {
+        while ((readByte = inputStream.read()) >= 0) {
             if (readByte == 0x0A) { // check for eol
                 break;
             } else {
@@ -112,9 +142,14 @@ class BaseConverter {
 
     private static void encode(String[] args, String inputPath, String outputFilePath,
                                String alphabet) throws IOException {
-        try (Writer writer = new BufferedWriter(
-                new OutputStreamWriter(
-                        new FileOutputStream(outputFilePath), StandardCharsets.UTF_8)
+        BaseN baseN = new BaseN(alphabet);
+        int threads = CliHelper.getThreadCount(args);
+        if (threads > 1) {
+            encodeParallel(args, inputPath, outputFilePath, baseN, threads);
+            return;
+        }
+        try (OutputStream outputStream = new BufferedOutputStream(
+                new FileOutputStream(outputFilePath)
         );
              InputStream inputStream = new BufferedInputStream(
                      new FileInputStream(new File(inputPath))
@@ -122,10 +157,33 @@ class BaseConverter {
 
             // case base N encoding option
             if (hasBaseNEncodeOption(args)) {
-                writer.write(alphabet);
-                writer.write((byte) 0x0A); // write eol
+                outputStream.write(alphabet.getBytes(StandardCharsets.US_ASCII));
+                outputStream.write(0x0A); // write eol
+            }
+            baseN.encodeToBaseN(inputStream, outputStream);
+        }
+    }
+
+    /**
+     * Encodes blocks of the file with several threads, see ParallelBaseN.
+     */
+    private static void encodeParallel(String[] args, String inputPath, String outputFilePath,
+                                       BaseN baseN, int threads) throws IOException {
+        try (FileChannel input = FileChannel.open(Paths.get(inputPath), READ);
+             FileChannel output = FileChannel.open(Paths.get(outputFilePath), CREATE, TRUNCATE_EXISTING, WRITE)) {
+
+            long dataPosition = 0;
+            // case base N encoding option
+            if (hasBaseNEncodeOption(args)) {
+                ByteBuffer alphabetLine = ByteBuffer.wrap(
+                        (baseN.getAlphabet() + "\n").getBytes(StandardCharsets.US_ASCII));
+                while (alphabetLine.hasRemaining()) {
+                    output.write(alphabetLine);
+                }
+                dataPosition = alphabetLine.capacity();
             }
-            new BaseN(alphabet).encodeToBaseN(inputStream, writer);
+            ParallelBaseN.encode(baseN, input, 0, input.size(), output, dataPosition, threads,
+                    WorkerPools.get(threads));
         }
     }
 }
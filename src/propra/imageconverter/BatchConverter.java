@@ -0,0 +1,155 @@
+package propra.imageconverter;
+
+import propra.imageconverter.image.CompressionType;
+import propra.imageconverter.io.IoBackend;
+import propra.imageconverter.io.reader.image.RleStrategy;
+import propra.imageconverter.util.CliHelper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static propra.imageconverter.util.Validator.ensure;
+
+/**
+ * The BatchConverter converts many images within one program call.
+ * <p>
+ * Input images are either all .tga and .propra files of a directory or the files listed in a
+ * manifest file (one path per line, empty lines and lines starting with '#' are ignored).
+ * Every image is written into the output directory with the file name of the input image and
+ * the extension of the target format.
+ * <p>
+ * The images are converted concurrently by a fixed number of worker threads (--threads), which share
+ * one Converter per input format.
+ * A failed conversion is reported, but does not abort the batch. A summary with the aggregate
+ * throughput is printed at the end.
+ */
+class BatchConverter {
+
+    static void convertImages(String[] args) throws IOException {
+        Path batchPath = Paths.get(CliHelper.getBatchPath(args));
+        Path outputDirectory = Paths.get(CliHelper.getOutputPath(args));
+        String outputFormat = CliHelper.getOutputFormat(args);
+        CompressionType compression = CliHelper.getCompressionType(args);
+        IoBackend ioBackend = CliHelper.getIoBackend(args);
+        RleStrategy rleStrategy = CliHelper.getRleStrategy(args);
+        int threads = CliHelper.getThreadCount(args);
+        // the images converted at the same time share the memory budget
+        long maxMemoryPerImage = CliHelper.getMaxMemory(args) / threads;
+        boolean pipelined = CliHelper.hasPipelineOption(args);
+
+        // every image is converted single threaded, the batch runs on the pool's threads
+        Function<String, Converter> createConverter = inputFormat -> Converter.builder(inputFormat, outputFormat)
+                .compression(compression)
+                .ioBackend(ioBackend)
+                .maxMemory(maxMemoryPerImage)
+                .pipelined(pipelined)
+                .rleStrategy(rleStrategy)
+                .build();
+        Map<String, Converter> converters = new ConcurrentHashMap<>();
+
+        List<Path> inputPaths = getInputPaths(batchPath);
+        Files.createDirectories(outputDirectory);
+
+        long startTime = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> conversions = new ArrayList<>();
+        Set<Path> outputPaths = new HashSet<>();
+        try {
+            for (Path inputPath : inputPaths) {
+                Path outputPath = outputDirectory.resolve(getOutputFileName(inputPath, outputFormat));
+                // two inputs with the same name must not overwrite each other (or an input image)
+                boolean isUniqueOutput = outputPaths.add(outputPath.toAbsolutePath().normalize())
+                        && !outputPath.toAbsolutePath().normalize().equals(inputPath.toAbsolutePath().normalize());
+
+                conversions.add(pool.submit(() -> {
+                    ensure(isUniqueOutput, () -> new IllegalArgumentException(
+                            "[error] Output file " + outputPath + " is already used. Skipping."));
+                    // an invalid configuration (e.g. unsupported input format) fails the image, not the batch
+                    converters.computeIfAbsent(CliHelper.getFileExtension(inputPath.toString()), createConverter)
+                            .convert(inputPath, outputPath);
+                    return null;
+                }));
+            }
+
+            // report results in order of the input files
+            int failed = 0;
+            long convertedBytes = 0;
+            for (int i = 0; i < conversions.size(); i++) {
+                Path inputPath = inputPaths.get(i);
+                try {
+                    conversions.get(i).get();
+                    convertedBytes += Files.size(inputPath);
+                } catch (ExecutionException e) {
+                    failed++;
+                    // exceptions without a message (e.g. NullPointerException) are reported by name
+                    Throwable cause = e.getCause();
+                    System.err.println(inputPath + ": " + (cause.getMessage() != null ? cause.getMessage() : cause));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("[error] Batch conversion was interrupted. Aborting.");
+                }
+            }
+
+            printSummary(inputPaths.size(), failed, convertedBytes, System.nanoTime() - startTime);
+            if (failed > 0) {
+                throw new IOException("[error] " + failed + " of " + inputPaths.size()
+                        + " images could not be converted.");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the images of the directory (sorted by name) or the images listed in the manifest file.
+     */
+    private static List<Path> getInputPaths(Path batchPath) throws IOException {
+        ensure(Files.exists(batchPath), () -> new IOException("[error] Batch input " + batchPath +
+                " does not exist. Aborting."));
+
+        if (Files.isDirectory(batchPath)) {
+            try (Stream<Path> files = Files.list(batchPath)) {
+                return files.filter(Files::isRegularFile)
+                        .filter(path -> isImageFile(path.getFileName().toString()))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        }
+
+        // manifest: relative paths are resolved against the directory of the manifest
+        Path manifestDirectory = batchPath.toAbsolutePath().getParent();
+        return Files.readAllLines(batchPath, StandardCharsets.UTF_8).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .map(manifestDirectory::resolve)
+                .collect(Collectors.toList());
+    }
+
+    private static boolean isImageFile(String fileName) {
+        return fileName.endsWith(".tga") || fileName.endsWith(".propra");
+    }
+
+    private static String getOutputFileName(Path inputPath, String outputFormat) {
+        String fileName = inputPath.getFileName().toString();
+        int extensionStart = fileName.lastIndexOf('.');
+        String baseName = extensionStart > 0 ? fileName.substring(0, extensionStart) : fileName;
+        return baseName + "." + outputFormat;
+    }
+
+    private static void printSummary(int images, int failed, long convertedBytes, long elapsedNanos) {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        double megaBytes = convertedBytes / (1024.0 * 1024.0);
+        System.out.println(String.format(Locale.ROOT,
+                "Converted %d of %d images (%d failed): %.1f MiB in %.2f s (%.1f MiB/s, %.1f images/s)",
+                images - failed, images, failed, megaBytes, seconds, megaBytes / seconds,
+                (images - failed) / seconds));
+    }
+}
@@ -0,0 +1,333 @@
+package propra.imageconverter;
+
+import propra.imageconverter.image.CompressionType;
+import propra.imageconverter.io.codec.base.BaseN;
+import propra.imageconverter.io.buffer.CountingOutputStream;
+import propra.imageconverter.util.CliHelper;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static propra.imageconverter.util.Validator.ensure;
+
+/**
+ * The ConversionDaemon runs the jobs of other processes in one long-lived JVM, so a job does not pay for
+ * the startup of a JVM and for running cold code (see DaemonClient).
+ * <p>
+ * It listens on a TCP port of the loopback interface (--daemon=<port>, 0 = any free port). A job is one
+ * program call with the options of ImageConverter (conversion, base N encoding/decoding or batch),
+ * e.g. --input=/images/a.tga --output=/images/a.propra --compression=rle. Paths are used as they are,
+ * clients send absolute paths.
+ * <p>
+ * Jobs run on a fixed pool of worker threads (--threads). The memory budget (--max-memory) is shared by
+ * the workers like in batch mode: a job gets its share, unless it asks for less. Every connection is
+ * served by a thread of its own (up to MAX_CONNECTIONS) and may send any number of jobs one after another,
+ * further connections are refused with an error.
+ * <p>
+ * Protocol (DataOutput, one request and one response per job):
+ * - on connect: the token of the daemon (UTF)
+ * - request: number of arguments (int), the arguments (UTF)
+ * - response: exit code (int, 0 or 123 like ImageConverter), error message (UTF, empty on success)
+ * The job "--stop-daemon" stops the daemon after the running jobs.
+ * <p>
+ * Before it accepts connections, the daemon converts a small generated image with every compression and
+ * encodes it with base 32 and base 64, so the first jobs already run compiled code.
+ * <p>
+ * Security: jobs read and write files with the permissions of the user running the daemon. Listening on
+ * the loopback interface only keeps out other hosts, not other users of the same machine. So the daemon
+ * creates a random token at startup and writes it to a file only its user can read (see getTokenFile,
+ * permissions 0600 in a directory with 0700). Connections which do not send this token first are closed
+ * without running a job. The file is deleted when the daemon stops.
+ */
+class ConversionDaemon {
+    static final int EXIT_SUCCESS = 0;
+    static final int EXIT_FAILURE = 123;
+    static final String STOP_OPTION = "--stop-daemon";
+    private static final int MAX_CONNECTIONS = 64;
+    private static final int WARM_UP_ROUNDS = 300;
+    private static final int WARM_UP_IMAGE_SIZE = 48;
+    private static final int TOKEN_BYTES = 32;
+    private static final int TOKEN_TIMEOUT_MILLIS = 10_000;
+    private static final int MAX_MESSAGE_LENGTH = 16 * 1024; // writeUTF takes at most 64 KiB (3 bytes per char)
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers;
+    private final long maxMemoryPerJob;
+    private final byte[] token;
+
+    private ConversionDaemon(ServerSocket serverSocket, int threads, long maxMemoryPerJob, String token) {
+        this.serverSocket = serverSocket;
+        this.workers = Executors.newFixedThreadPool(threads);
+        this.maxMemoryPerJob = maxMemoryPerJob;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * File of the token of the daemon on the port, in the home directory of the user
+     * (~/.propra-imageconverter/daemon-<port>.token).
+     */
+    static Path getTokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), ".propra-imageconverter", "daemon-" + port + ".token");
+    }
+
+    // the directory and the file are created with owner only permissions, so no other user can read the token
+    private static String createTokenFile(Path tokenFile) throws IOException {
+        byte[] randomBytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(randomBytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : randomBytes) {
+            token.append(String.format("%02x", b));
+        }
+
+        boolean isPosix = tokenFile.getFileSystem().supportedFileAttributeViews().contains("posix");
+        Path directory = tokenFile.getParent();
+        if (isPosix) {
+            if (!Files.isDirectory(directory)) {
+                Files.createDirectories(directory,
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            }
+            Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+        } else { // e.g. Windows: the home directory of the user is private
+            Files.createDirectories(directory);
+        }
+        // a stale file of a daemon that was killed is replaced, a new file gets the permissions on creation
+        Files.deleteIfExists(tokenFile);
+        if (isPosix) {
+            Files.createFile(tokenFile,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(tokenFile);
+        }
+        Files.write(tokenFile, token.toString().getBytes(StandardCharsets.UTF_8));
+        return token.toString();
+    }
+
+    static void run(String[] args) throws IOException {
+        int port = CliHelper.getPort(args, "--daemon=");
+        int threads = CliHelper.getThreadCount(args);
+        // the jobs run at the same time share the memory budget
+        long maxMemoryPerJob = CliHelper.getMaxMemory(args) / threads;
+
+        long startTime = System.nanoTime();
+        warmUp();
+        try (ServerSocket serverSocket = new ServerSocket(port, MAX_CONNECTIONS, InetAddress.getLoopbackAddress())) {
+            Path tokenFile = getTokenFile(serverSocket.getLocalPort());
+            String token = createTokenFile(tokenFile);
+            try {
+                System.out.println("Conversion daemon listening on " +
+                        serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort() +
+                        " with " + threads + " worker thread(s) (warm up " +
+                        (System.nanoTime() - startTime) / 1_000_000 + " ms, token in " + tokenFile + ")");
+                new ConversionDaemon(serverSocket, threads, maxMemoryPerJob, token).serve();
+            } finally {
+                Files.deleteIfExists(tokenFile);
+            }
+        }
+    }
+
+    private void serve() throws IOException {
+        ThreadPoolExecutor connections = new ThreadPoolExecutor(0, MAX_CONNECTIONS, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>());
+        try {
+            while (true) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    if (serverSocket.isClosed()) { // stopped by a client
+                        return;
+                    }
+                    throw e;
+                }
+                try {
+                    connections.execute(() -> serve(socket));
+                } catch (RejectedExecutionException e) {
+                    refuse(socket);
+                }
+            }
+        } finally {
+            workers.shutdown();
+            connections.shutdown();
+        }
+    }
+
+    // runs the jobs of one connection until the client closes it
+    private void serve(Socket socket) {
+        try (Socket connection = socket;
+             DataInputStream input = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+            connection.setTcpNoDelay(true);
+            if (!isAuthenticated(connection, input)) {
+                return; // not a client of the user of the daemon
+            }
+            String[] args;
+            while ((args = readJob(input)) != null) {
+                if (args.length == 1 && args[0].equals(STOP_OPTION)) {
+                    writeResult(output, EXIT_SUCCESS, "");
+                    serverSocket.close();
+                    return;
+                }
+                String[] jobArgs = args;
+                Future<Void> job = workers.submit(() -> {
+                    runJob(jobArgs);
+                    return null;
+                });
+                try {
+                    job.get();
+                    writeResult(output, EXIT_SUCCESS, "");
+                } catch (ExecutionException e) {
+                    writeResult(output, EXIT_FAILURE, getMessage(e.getCause()));
+                }
+            }
+        } catch (IOException | RejectedExecutionException e) {
+            // connection lost or daemon stopped, the jobs of other connections are not affected
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // the client has to send the token first, within TOKEN_TIMEOUT_MILLIS
+    private boolean isAuthenticated(Socket connection, DataInputStream input) throws IOException {
+        connection.setSoTimeout(TOKEN_TIMEOUT_MILLIS);
+        byte[] clientToken;
+        try {
+            clientToken = input.readUTF().getBytes(StandardCharsets.UTF_8);
+        } catch (EOFException | SocketTimeoutException | UTFDataFormatException e) {
+            return false;
+        }
+        connection.setSoTimeout(0);
+        // compared in constant time, so the token cannot be guessed byte by byte
+        return MessageDigest.isEqual(token, clientToken);
+    }
+
+    // messages of exceptions without one (e.g. NullPointerException) name the exception instead
+    private static String getMessage(Throwable throwable) {
+        return throwable.getMessage() != null ? throwable.getMessage() : throwable.toString();
+    }
+
+    private void runJob(String[] args) throws IOException {
+        List<String> jobArgs = new ArrayList<>(Arrays.asList(args));
+        ensure(jobArgs.stream().noneMatch(arg -> arg.equals("--help") || arg.startsWith("--daemon=")
+                        || arg.equals("--input=-") || arg.equals("--output=-")),
+                () -> new IllegalArgumentException("[error] Option not supported by the daemon " +
+                        "(--help, --daemon, standard input/output). Aborting."));
+
+        if (jobArgs.stream().anyMatch(arg -> arg.startsWith("--max-memory="))) {
+            long maxMemory = CliHelper.getMaxMemory(args);
+            ensure(maxMemory <= maxMemoryPerJob, () -> new IllegalArgumentException(
+                    "[error] --max-memory exceeds the memory of a daemon job (" + maxMemoryPerJob / 1024 +
+                            " KiB). Aborting."));
+        } else {
+            jobArgs.add("--max-memory=" + maxMemoryPerJob);
+        }
+        ImageConverter.run(jobArgs.toArray(new String[0]));
+    }
+
+    // returns null if the client closed the connection
+    static String[] readJob(DataInputStream input) throws IOException {
+        int argCount;
+        try {
+            argCount = input.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        ensure(argCount >= 0 && argCount <= 1024, () -> new IOException("[error] Invalid job. Aborting."));
+        String[] args = new String[argCount];
+        for (int i = 0; i < argCount; i++) {
+            args[i] = input.readUTF();
+        }
+        return args;
+    }
+
+    static void writeJob(DataOutputStream output, String[] args) throws IOException {
+        output.writeInt(args.length);
+        for (String arg : args) {
+            output.writeUTF(arg);
+        }
+        output.flush();
+    }
+
+    static void writeResult(DataOutputStream output, int exitCode, String message) throws IOException {
+        output.writeInt(exitCode);
+        output.writeUTF(message.length() > MAX_MESSAGE_LENGTH
+                ? message.substring(0, MAX_MESSAGE_LENGTH) + "..." : message);
+        output.flush();
+    }
+
+    private static void refuse(Socket socket) {
+        try (Socket connection = socket;
+             DataOutputStream output = new DataOutputStream(connection.getOutputStream())) {
+            // the job of the refused client is answered without reading it
+            writeResult(output, EXIT_FAILURE, "[error] Daemon is busy (" + MAX_CONNECTIONS +
+                    " connections). Aborting.");
+        } catch (IOException e) {
+            // client is gone
+        }
+    }
+
+    /**
+     * Runs the conversion and encoding code paths on a small image in memory, until the JIT compiled them.
+     */
+    private static void warmUp() throws IOException {
+        byte[] tga = createWarmUpImage();
+        CompressionType[] compressionTypes = {CompressionType.UNCOMPRESSED, CompressionType.RLE,
+                CompressionType.HUFFMAN, CompressionType.AUTO};
+        List<Converter> toProPra = new ArrayList<>();
+        List<Converter> toTga = new ArrayList<>();
+        for (CompressionType compressionType : compressionTypes) {
+            toProPra.add(Converter.builder("tga", "propra").compression(compressionType).build());
+            toTga.add(Converter.builder("propra", "tga")
+                    .compression(compressionType == CompressionType.HUFFMAN ? CompressionType.RLE : compressionType)
+                    .build());
+        }
+        BaseN base32 = new BaseN("0123456789ABCDEFGHIJKLMNOPQRSTUV");
+        BaseN base64 = new BaseN("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/");
+
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            for (int i = 0; i < compressionTypes.length; i++) {
+                toTga.get(i).convert(toProPra.get(i).convert(tga));
+            }
+            for (BaseN baseN : new BaseN[]{base32, base64}) {
+                ByteArrayOutputStream text = new ByteArrayOutputStream();
+                baseN.encodeToBaseN(new ByteArrayInputStream(tga), text);
+                baseN.decodeFromBaseN(new ByteArrayInputStream(text.toByteArray()), new CountingOutputStream());
+            }
+        }
+    }
+
+    // uncompressed tga: runs in the upper half, noise in the lower half
+    private static byte[] createWarmUpImage() {
+        int size = WARM_UP_IMAGE_SIZE;
+        ByteBuffer tga = ByteBuffer.allocate(18 + size * size * 3).order(ByteOrder.LITTLE_ENDIAN);
+        tga.put((byte) 0).put((byte) 0).put((byte) 2); // ID, color map type, uncompressed
+        tga.putShort((short) 0).putShort((short) 0).put((byte) 0); // no color map
+        tga.putShort((short) 0).putShort((short) size); // origin
+        tga.putShort((short) size).putShort((short) size).put((byte) 24).put((byte) 32);
+        int random = 1;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                random = random * 1103515245 + 12345;
+                int value = y < size / 2 ? x / 8 * 40 : random >>> 24;
+                tga.put((byte) value).put((byte) (value / 2)).put((byte) y);
+            }
+        }
+        return tga.array();
+    }
+}
@@ -0,0 +1,593 @@
+package propra.imageconverter;
+
+import propra.imageconverter.image.ColorSequence;
+import propra.imageconverter.image.CompressionType;
+import propra.imageconverter.image.MetaData;
+import propra.imageconverter.io.IoBackend;
+import propra.imageconverter.io.buffer.CountingOutputStream;
+import propra.imageconverter.io.buffer.DataSegmentBuffer;
+import propra.imageconverter.io.buffer.Pipeline;
+import propra.imageconverter.io.codec.huffman.HuffmanCodec;
+import propra.imageconverter.io.codec.huffman.ParallelHuffmanEncoder;
+import propra.imageconverter.io.reader.ByteBufferInputStream;
+import propra.imageconverter.io.reader.MetaDataReader;
+import propra.imageconverter.io.reader.ReaderFactory;
+import propra.imageconverter.io.reader.image.DataSegmentReader;
+import propra.imageconverter.io.reader.image.ParallelDataSegmentReader;
+import propra.imageconverter.io.reader.image.RleStrategy;
+import propra.imageconverter.io.reader.image.RleTranscoder;
+import propra.imageconverter.io.reader.image.UncompressedTranscoder;
+import propra.imageconverter.io.writer.ByteBufferImageOutput;
+import propra.imageconverter.io.writer.ImageOutput;
+import propra.imageconverter.io.writer.ImageWriter;
+import propra.imageconverter.io.writer.StreamImageOutput;
+import propra.imageconverter.io.writer.WriterFactory;
+import propra.imageconverter.util.WorkerPools;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static propra.imageconverter.util.Validator.ensure;
+
+/**
+ * The Converter converts images from one image format (tga, propra) into another with a fixed
+ * configuration (compression, I/O backend, threads, memory budget, pipeline, rle strategy).
+ * <p>
+ * Usage:
+ * Converter converter = Converter.builder("tga", "propra").compression(CompressionType.HUFFMAN).build();
+ * converter.convert(inputPath, outputPath);
+ * <p>
+ * Images are converted between files, in memory from a ByteBuffer or a byte array into a growable buffer
+ * (without temporary files or file system calls, see convert(ByteBuffer)) or between streams and channels
+ * (e.g. standard input and output in a pipe, see convert(InputStream, OutputStream)).
+ * <p>
+ * A Converter is immutable and the state of a conversion (meta data, readers, writers, buffers) is created
+ * per call, so one Converter can be shared by any number of threads converting images at the same time.
+ * The memory budget applies to each conversion on its own. The threads of a conversion come from pools
+ * shared by all conversions (see WorkerPools).
+ * <p>
+ * Memory: conversions stream the data segment. Readers fill a fixed set of reused scanLine buffers
+ * (one scanLine, or one band of scanLines per thread), writers consume them. Huffman and auto compression
+ * need a second pass, so the data segment is buffered (see DataSegmentBuffer): up to the memory budget
+ * in memory, the rest in a temporary file. The memory needed therefore depends on the
+ * image width and the number of threads, not on the image size.
+ */
+public final class Converter {
+    private final String inputFormat;
+    private final String outputFormat;
+    private final CompressionType compressionType;
+    private final IoBackend ioBackend;
+    private final int threads;
+    private final long maxMemory;
+    private final boolean pipelined;
+    private final RleStrategy rleStrategy;
+
+    private Converter(Builder builder) {
+        this.inputFormat = builder.inputFormat;
+        this.outputFormat = builder.outputFormat;
+        this.compressionType = builder.compressionType;
+        this.ioBackend = builder.ioBackend;
+        this.threads = builder.threads;
+        this.maxMemory = builder.maxMemory;
+        this.pipelined = builder.pipelined;
+        this.rleStrategy = builder.rleStrategy;
+    }
+
+    /**
+     * Returns a builder for converters from the input format into the output format ("tga" or "propra").
+     */
+    public static Builder builder(String inputFormat, String outputFormat) {
+        return new Builder(inputFormat, outputFormat);
+    }
+
+    /**
+     * Converts the image at inputPath into an image at outputPath (an existing file is replaced).
+     * If the conversion fails, no output file is left behind.
+     */
+    public void convert(Path inputPath, Path outputPath) throws IOException {
+        try (InputStream inputStream = ioBackend.openInputStream(inputPath)) {
+            convert(inputStream, new FileTarget(outputPath));
+        }
+    }
+
+    /**
+     * Converts the image read from input to its end into an image at outputPath (see convert(Path, Path)).
+     * The stream is not closed.
+     */
+    public void convert(InputStream input, Path outputPath) throws IOException {
+        convert(input, new FileTarget(outputPath));
+    }
+
+    /**
+     * Converts the image in the remaining bytes of input (position and limit of input are not changed).
+     * Returns a buffer over the output image (position 0, limit = image size).
+     * The output image is held in memory as part of the memory budget (half of the memory left for buffers),
+     * a larger output fails with an IOException. It is limited to 2 GiB.
+     */
+    public ByteBuffer convert(ByteBuffer input) throws IOException {
+        MemoryTarget target = new MemoryTarget(input.remaining());
+        convert(new ByteBufferInputStream(input), target);
+        return target.imageOutput.toByteBuffer();
+    }
+
+    /**
+     * Converts the image in input, returns the output image (see convert(ByteBuffer)).
+     */
+    public byte[] convert(byte[] input) throws IOException {
+        MemoryTarget target = new MemoryTarget(input.length);
+        convert(new ByteBufferInputStream(ByteBuffer.wrap(input)), target);
+        return target.imageOutput.toByteArray();
+    }
+
+    /**
+     * Converts the image read from input to its end and writes the output image into output
+     * (see convert(InputStream, OutputStream)). The channels are not closed.
+     */
+    public void convert(ReadableByteChannel input, WritableByteChannel output) throws IOException {
+        convert(new BufferedInputStream(Channels.newInputStream(input)), Channels.newOutputStream(output));
+    }
+
+    /**
+     * Converts the image read from input to its end and writes the output image into output, neither stream
+     * needs to be seekable (e.g. standard input and output). The streams are not closed.
+     * <p>
+     * Tga output is streamed while it is converted. The header of propra output contains size and checksum of
+     * the data segment, so the output is held back until the conversion succeeded (half of the buffer memory
+     * of the budget in memory, the rest in a temporary file, see StreamImageOutput). Tga output is held back
+     * as well if the input is verified on its end (size and checksum of uncompressed propra input), so an
+     * input that turns out invalid leaves no output. Other inputs are verified while they are read: a failed
+     * conversion may leave the beginning of tga output in the stream.
+     */
+    public void convert(InputStream input, OutputStream output) throws IOException {
+        convert(input, new StreamTarget(output));
+    }
+
+    private void convert(InputStream inputStream, OutputTarget target) throws IOException {
+        MetaDataReader metaDataReader = ReaderFactory.getReaderFor(inputFormat);
+
+        // Get image meta data
+        MetaData metaDataInput = metaDataReader.readMetaData(inputStream);
+        InputStream dataSegmentInputStream = metaDataReader.getDataSegmentInputStream(inputStream);
+        long bufferMemoryLimit = target.reserveMemory(getBufferMemoryLimit(metaDataInput));
+
+        try {
+            if (compressionType == CompressionType.AUTO) {
+                convertImageCompressionTypeAuto(metaDataInput, metaDataReader, dataSegmentInputStream,
+                        target, bufferMemoryLimit);
+            } else if (compressionType == CompressionType.HUFFMAN) {
+                convertImageHuffman(metaDataInput, metaDataReader, dataSegmentInputStream,
+                        target, bufferMemoryLimit);
+            } else {
+                ImageWriter imageWriter = WriterFactory.getWriterFor(outputFormat, compressionType, null);
+                writeImage(imageWriter, metaDataInput, dataSegmentInputStream, target,
+                        metaDataReader.isVerifiedOnEnd(), (stageInput, stageOutput) ->
+                        writeDataSegment(imageWriter, metaDataInput, stageInput, stageOutput, threads, rleStrategy));
+                // source is verified while it is converted, an invalid source must not leave an output
+                metaDataReader.readOnEnd();
+            }
+            target.complete();
+        } catch (IOException | RuntimeException e) {
+            target.discard();
+            throw e;
+        }
+    }
+
+    /**
+     * The memory budget (--max-memory) covers the working memory of the reader (scanLine buffers and
+     * scanLine splitters, which do not depend on the image height), the blocks of a pipeline (--pipeline)
+     * and the memory part of a data segment buffer.
+     * Returns the memory left for the data segment buffer, the rest of a data segment is spilled
+     * into a temporary file. Fails before anything is written if the working memory does not fit.
+     */
+    private long getBufferMemoryLimit(MetaData metaDataInput) {
+        long readerMemory = threads > 1
+                ? ParallelDataSegmentReader.getWorkingMemory(metaDataInput, threads, rleStrategy)
+                : DataSegmentReader.getWorkingMemory(metaDataInput, rleStrategy);
+        if (threads > 1 && (compressionType == CompressionType.HUFFMAN || compressionType == CompressionType.AUTO)) {
+            // the buffered data segment may be huffman encoded in blocks
+            readerMemory = Math.max(readerMemory, DataSegmentReader.getWorkingMemory(metaDataInput, rleStrategy)
+                    + ParallelHuffmanEncoder.getWorkingMemory(threads));
+        }
+        long workingMemory = readerMemory + (pipelined ? Pipeline.WORKING_MEMORY : 0);
+        ensure(workingMemory <= maxMemory, () -> new IllegalArgumentException(
+                "[error] Converting an image of width " + metaDataInput.getImageWidth() + " with " + threads +
+                        " thread(s) needs at least " + toKibibytes(workingMemory) + " KiB, but --max-memory is " +
+                        toKibibytes(maxMemory) + " KiB. Aborting."));
+        return maxMemory - workingMemory;
+    }
+
+    private static long toKibibytes(long bytes) {
+        return (bytes + 1023) / 1024;
+    }
+
+    /**
+     * The data segment is decoded once into a buffer and its byte frequencies are counted
+     * (in parallel with more than one thread).
+     * The huffman codec is generated from these frequencies and the buffered data segment is encoded.
+     */
+    private void convertImageHuffman(MetaData metaDataInput, MetaDataReader metaDataReader,
+                                     InputStream inputStream, OutputTarget target,
+                                     long bufferMemoryLimit) throws IOException {
+        try (DataSegmentBuffer dataSegment = readDataSegmentIntoBuffer(metaDataInput, metaDataReader,
+                inputStream, bufferMemoryLimit)) {
+            HuffmanCodec huffmanCodec = new HuffmanCodec(
+                    dataSegment.getByteCounts(threads, WorkerPools.get(threads)));
+            ImageWriter imageWriter = WriterFactory.getWriterFor(outputFormat, CompressionType.HUFFMAN, huffmanCodec);
+            // with more than one thread the buffered data segment is encoded in blocks in parallel
+            writeImageFromBuffer(imageWriter, metaDataInput, dataSegment, target, threads, RleStrategy.GREEDY,
+                    huffmanCodec);
+        }
+    }
+
+    /**
+     * Gets the best possible compression from allowed compression types of image format.
+     * The approach:
+     * The data segment is decoded once into a buffer. The output size of each compression type
+     * is calculated from it (uncompressed: known, rle: packets of the rle strategy are counted, huffman:
+     * from the byte frequencies) and only the smallest output is written.
+     * Since the user wants to use the 'auto' option I assumed that he does not want to be informed
+     * about the 'winning' compression type by console print out.
+     */
+    private void convertImageCompressionTypeAuto(MetaData metaDataInput, MetaDataReader metaDataReader,
+                                                 InputStream inputStream, OutputTarget target,
+                                                 long bufferMemoryLimit) throws IOException {
+        try (DataSegmentBuffer dataSegment = readDataSegmentIntoBuffer(metaDataInput, metaDataReader,
+                inputStream, bufferMemoryLimit)) {
+            HuffmanCodec huffmanCodec = null;
+
+            // the first compression type wins if sizes are equal
+            CompressionType winner = null;
+            long winnerSize = Long.MAX_VALUE;
+            for (CompressionType candidate : getCandidateCompressionTypes(outputFormat)) {
+                long size;
+                switch (candidate) {
+                    case UNCOMPRESSED:
+                        size = dataSegment.size();
+                        break;
+                    case RLE:
+                        size = getRleDataSegmentSize(metaDataInput, dataSegment);
+                        break;
+                    case HUFFMAN:
+                        long[] byteCounts = dataSegment.getByteCounts(threads, WorkerPools.get(threads));
+                        huffmanCodec = new HuffmanCodec(byteCounts);
+                        size = huffmanCodec.getEncodedSize(byteCounts);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unexpected compression type. Aborting.");
+                }
+                if (size < winnerSize) {
+                    winner = candidate;
+                    winnerSize = size;
+                }
+            }
+
+            HuffmanCodec writerHuffmanCodec = winner == CompressionType.HUFFMAN ? huffmanCodec : null;
+            ImageWriter imageWriter = WriterFactory.getWriterFor(outputFormat, winner, writerHuffmanCodec);
+            writeImageFromBuffer(imageWriter, metaDataInput, dataSegment, target, threads, rleStrategy,
+                    writerHuffmanCodec);
+        }
+    }
+
+    private static CompressionType[] getCandidateCompressionTypes(String outputFormat) {
+        switch (outputFormat) {
+            case "propra":
+                return new CompressionType[]{CompressionType.HUFFMAN, CompressionType.UNCOMPRESSED,
+                        CompressionType.RLE};
+            case "tga":
+                return new CompressionType[]{CompressionType.UNCOMPRESSED, CompressionType.RLE};
+            default:
+                throw new IllegalArgumentException("Unsupported image type. Aborting.");
+        }
+    }
+
+    // counts the bytes of the rle data segment without writing it
+    private long getRleDataSegmentSize(MetaData metaDataInput, DataSegmentBuffer dataSegment) throws IOException {
+        try (CountingOutputStream countingOutputStream = new CountingOutputStream();
+             InputStream bufferInputStream = dataSegment.openInputStream()) {
+            DataSegmentReader.read(getBufferMetaData(metaDataInput), bufferInputStream,
+                    packet -> packet.writeToRleOutputStream(countingOutputStream, ColorSequence.GBR), rleStrategy);
+            return countingOutputStream.getCount();
+        }
+    }
+
+    /**
+     * Decodes the data segment into a buffer, which holds it uncompressed with the
+     * color sequence of propra files (up to bufferMemoryLimit bytes in memory, the rest in a temporary file).
+     */
+    private DataSegmentBuffer readDataSegmentIntoBuffer(MetaData metaDataInput, MetaDataReader metaDataReader,
+                                                        InputStream inputStream,
+                                                        long bufferMemoryLimit) throws IOException {
+        DataSegmentBuffer dataSegment = new DataSegmentBuffer(bufferMemoryLimit);
+        try {
+            Pipeline.Stage decoding = (stageInput, stageOutput) -> DataSegmentReader.read(metaDataInput, stageInput,
+                    packet -> packet.writeToUncompressedOutputStream(stageOutput, ColorSequence.GBR));
+            if (pipelined) {
+                Pipeline.run(inputStream, dataSegment, decoding);
+            } else {
+                decoding.run(inputStream, dataSegment);
+            }
+            metaDataReader.readOnEnd();
+            return dataSegment;
+        } catch (IOException | RuntimeException e) {
+            dataSegment.close();
+            throw e;
+        }
+    }
+
+    private static MetaData getBufferMetaData(MetaData metaDataInput) {
+        return new MetaData(CompressionType.UNCOMPRESSED,
+                metaDataInput.getImageWidth(), metaDataInput.getImageHeight(),
+                metaDataInput.getBitsPerPixel(), ColorSequence.GBR);
+    }
+
+    // huffmanCodec: codec of a huffman imageWriter, otherwise null
+    private void writeImageFromBuffer(ImageWriter imageWriter, MetaData metaDataInput,
+                                      DataSegmentBuffer dataSegment, OutputTarget target,
+                                      int writerThreads, RleStrategy writerRleStrategy,
+                                      HuffmanCodec huffmanCodec) throws IOException {
+        MetaData bufferMetaData = getBufferMetaData(metaDataInput);
+        Pipeline.Stage dataSegmentWriter;
+        if (huffmanCodec != null && writerThreads > 1) {
+            // the codes of a huffman stream cross packet boundaries, so instead of packets blocks of the
+            // buffered bytes (already in the color sequence of propra) are encoded in parallel
+            dataSegmentWriter = (stageInput, stageOutput) ->
+                    ParallelHuffmanEncoder.encode(stageInput, stageOutput, huffmanCodec, writerThreads,
+                            WorkerPools.get(writerThreads));
+        } else {
+            dataSegmentWriter = (stageInput, stageOutput) -> writeDataSegment(imageWriter, bufferMetaData,
+                    stageInput, stageOutput, writerThreads, writerRleStrategy);
+        }
+        try (InputStream bufferInputStream = dataSegment.openInputStream()) {
+            // the input was verified when it was read into the buffer
+            writeImage(imageWriter, bufferMetaData, bufferInputStream, target, false, dataSegmentWriter);
+        }
+    }
+
+    // dataSegmentWriter: writes the data segment read from inputStream into the data segment of the output
+    private void writeImage(ImageWriter imageWriter, MetaData metaDataInput,
+                            InputStream inputStream, OutputTarget target, boolean isInputVerifiedOnEnd,
+                            Pipeline.Stage dataSegmentWriter) throws IOException {
+        // Write new image
+        try (ImageOutput imageOutput = target.open(imageWriter, metaDataInput, isInputVerifiedOnEnd)) {
+
+            // writer is called before packets from the data segment arrive to write the header
+            // or a header placeholder
+            OutputStream dataSegmentOutputStream = imageWriter.writeOnInit(metaDataInput,
+                    imageOutput.getOutputStream());
+
+            if (pipelined) {
+                // reading, converting and writing the data segment run on separate threads
+                Pipeline.run(inputStream, dataSegmentOutputStream, dataSegmentWriter);
+            } else {
+                dataSegmentWriter.run(inputStream, dataSegmentOutputStream);
+            }
+
+            // in case of placeholder header, write missing header into file
+            imageWriter.writeOnEnd(metaDataInput, imageOutput);
+        }
+    }
+
+    private static void writeDataSegment(ImageWriter imageWriter, MetaData metaDataInput, InputStream inputStream,
+                                         OutputStream dataSegmentOutputStream, int writerThreads,
+                                         RleStrategy writerRleStrategy) throws IOException {
+        // the packets only matter for rle output, they are split the fast way for any other output
+        RleStrategy packetStrategy = imageWriter.getCompressionType() == CompressionType.RLE
+                ? writerRleStrategy : RleStrategy.GREEDY;
+        if (metaDataInput.getCompressionType() == CompressionType.RLE
+                && packetStrategy == RleStrategy.GREEDY
+                && imageWriter.getCompressionType() == CompressionType.RLE) {
+            // rle packets are passed on as they are, only their pixels are converted
+            RleTranscoder.transcode(metaDataInput, inputStream, dataSegmentOutputStream,
+                    imageWriter.getColorSequence());
+        } else if (metaDataInput.getCompressionType() != CompressionType.RLE
+                && imageWriter.getCompressionType() == CompressionType.UNCOMPRESSED) {
+            // no packets are needed, the pixels are converted in blocks
+            UncompressedTranscoder.transcode(metaDataInput, inputStream, dataSegmentOutputStream,
+                    imageWriter.getColorSequence());
+        } else if (writerThreads > 1) {
+            ParallelDataSegmentReader.read(metaDataInput, inputStream, imageWriter,
+                    dataSegmentOutputStream, writerThreads, packetStrategy, WorkerPools.get(writerThreads));
+        } else {
+            DataSegmentReader.read(metaDataInput, inputStream,
+                    imageWriter.getPacketWriter(dataSegmentOutputStream), packetStrategy);
+        }
+    }
+
+    /**
+     * Where the output image of a conversion is written to.
+     */
+    private interface OutputTarget {
+        // takes the memory the target needs from the buffer memory of the budget, returns the rest
+        default long reserveMemory(long bufferMemoryLimit) {
+            return bufferMemoryLimit;
+        }
+
+        // isInputVerifiedOnEnd: the input is verified after the output was written (see MetaDataReader.readOnEnd)
+        ImageOutput open(ImageWriter imageWriter, MetaData metaDataInput, boolean isInputVerifiedOnEnd)
+                throws IOException;
+
+        // called after the conversion succeeded
+        default void complete() throws IOException {
+        }
+
+        // removes the output of a failed conversion
+        void discard() throws IOException;
+    }
+
+    private class FileTarget implements OutputTarget {
+        private final Path outputPath;
+        private boolean isOpened;
+
+        FileTarget(Path outputPath) {
+            this.outputPath = outputPath;
+        }
+
+        @Override
+        public ImageOutput open(ImageWriter imageWriter, MetaData metaDataInput, boolean isInputVerifiedOnEnd)
+                throws IOException {
+            Files.deleteIfExists(outputPath); // remove output file if exists
+            isOpened = true;
+            return ioBackend.openImageOutput(outputPath);
+        }
+
+        @Override
+        public void discard() throws IOException {
+            // an existing file is only removed if the conversion already replaced it
+            if (isOpened) {
+                Files.deleteIfExists(outputPath);
+            }
+        }
+    }
+
+    private static class MemoryTarget implements OutputTarget {
+        private static final long MIN_INITIAL_CAPACITY = 64 * 1024;
+        private final long inputSize;
+        private long memoryLimit;
+        private ByteBufferImageOutput imageOutput;
+
+        MemoryTarget(long inputSize) {
+            this.inputSize = inputSize;
+        }
+
+        @Override
+        public long reserveMemory(long bufferMemoryLimit) {
+            // the output shares the buffer memory with the data segment buffer
+            memoryLimit = bufferMemoryLimit / 2;
+            return bufferMemoryLimit - memoryLimit;
+        }
+
+        @Override
+        public ImageOutput open(ImageWriter imageWriter, MetaData metaDataInput, boolean isInputVerifiedOnEnd) {
+            // the estimate comes from the header of the input, which may claim any size: the buffer starts
+            // at most with the size of the input (and grows while the output is written)
+            long sizeEstimate = Math.min(imageWriter.estimateOutputSize(metaDataInput),
+                    Math.max(MIN_INITIAL_CAPACITY, inputSize));
+            imageOutput = new ByteBufferImageOutput(sizeEstimate, memoryLimit);
+            return imageOutput;
+        }
+
+        @Override
+        public void discard() {
+            imageOutput = null;
+        }
+    }
+
+    private static class StreamTarget implements OutputTarget {
+        private final OutputStream outputStream;
+        private long memoryLimit;
+        private StreamImageOutput imageOutput;
+
+        StreamTarget(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public long reserveMemory(long bufferMemoryLimit) {
+            // a held back output shares the buffer memory with the data segment buffer
+            memoryLimit = bufferMemoryLimit / 2;
+            return bufferMemoryLimit - memoryLimit;
+        }
+
+        @Override
+        public ImageOutput open(ImageWriter imageWriter, MetaData metaDataInput, boolean isInputVerifiedOnEnd) {
+            // an output that is completed on end, or whose input may still turn out invalid, is held back
+            imageOutput = new StreamImageOutput(outputStream,
+                    imageWriter.isHeaderWrittenOnEnd() || isInputVerifiedOnEnd, memoryLimit);
+            return imageOutput;
+        }
+
+        @Override
+        public void complete() throws IOException {
+            imageOutput.commit();
+        }
+
+        @Override
+        public void discard() throws IOException {
+            if (imageOutput != null) {
+                imageOutput.discard();
+            }
+        }
+    }
+
+    /**
+     * Builder of a Converter, every option has the default of the corresponding command line option.
+     * A builder is not thread-safe, the converters it builds are.
+     */
+    public static final class Builder {
+        private final String inputFormat;
+        private final String outputFormat;
+        private CompressionType compressionType = CompressionType.UNCOMPRESSED;
+        private IoBackend ioBackend = IoBackend.STREAM;
+        private int threads = 1;
+        private long maxMemory = Math.min(DataSegmentBuffer.DEFAULT_MEMORY_LIMIT, Runtime.getRuntime().maxMemory() / 2);
+        private boolean pipelined;
+        private RleStrategy rleStrategy = RleStrategy.GREEDY;
+
+        private Builder(String inputFormat, String outputFormat) {
+            this.inputFormat = inputFormat;
+            this.outputFormat = outputFormat;
+        }
+
+        public Builder compression(CompressionType compressionType) {
+            this.compressionType = compressionType;
+            return this;
+        }
+
+        public Builder ioBackend(IoBackend ioBackend) {
+            this.ioBackend = ioBackend;
+            return this;
+        }
+
+        // threads of one conversion (rle compression, huffman byte counting and encoding)
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        // memory budget of one conversion in bytes
+        public Builder maxMemory(long maxMemory) {
+            this.maxMemory = maxMemory;
+            return this;
+        }
+
+        public Builder pipelined(boolean pipelined) {
+            this.pipelined = pipelined;
+            return this;
+        }
+
+        public Builder rleStrategy(RleStrategy rleStrategy) {
+            this.rleStrategy = rleStrategy;
+            return this;
+        }
+
+        /**
+         * Validates the configuration, so a conversion does not fail because of it.
+         */
+        public Converter build() {
+            ReaderFactory.getReaderFor(inputFormat); // fails for unsupported input formats
+            if (compressionType == CompressionType.HUFFMAN) {
+                ensure(outputFormat.equals("propra"), () ->
+                        new IllegalArgumentException("Huffman compression only supported " +
+                                "for propra files. Aborting."));
+            }
+            ensure(outputFormat.equals("tga") || outputFormat.equals("propra"),
+                    () -> new IllegalArgumentException("[error] Unsupported image format. " +
+                            "Please use --help to view usage."));
+            ensure(compressionType != null && ioBackend != null && rleStrategy != null,
+                    () -> new IllegalArgumentException("[error] Missing converter option. Aborting."));
+            ensure(threads > 0,
+                    () -> new IllegalArgumentException("[error] Number of threads must be positive. Aborting."));
+            ensure(maxMemory > 0,
+                    () -> new IllegalArgumentException("[error] Invalid memory size. Aborting."));
+            return new Converter(this);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package propra.imageconverter;
+
+import propra.imageconverter.util.CliHelper;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static propra.imageconverter.util.Validator.ensure;
+
+/**
+ * Usage: java propra.imageconverter.DaemonClient --port=<port> [options]
+ * <p>
+ * Thin client of the ConversionDaemon: sends the options (the same as for ImageConverter) as one job
+ * to the daemon on the localhost port and waits for its result. Error message and exit code are the ones
+ * of ImageConverter. Relative paths are resolved against the working directory of the client.
+ * <p>
+ * A program converting many images keeps one DaemonClient open and sends every job over its connection
+ * (run(...)), so there is no process start per image at all.
+ * A DaemonClient sends one job at a time, it is not thread-safe.
+ * <p>
+ * On connect the client sends the token of the daemon, read from its token file (see
+ * ConversionDaemon.getTokenFile). Only the user running the daemon can read it, so other users cannot
+ * run jobs with the permissions of this user.
+ */
+public final class DaemonClient implements Closeable {
+    private static final String[] PATH_OPTIONS = {"--input=", "--output=", "--batch="};
+
+    private final Socket socket;
+    private final DataInputStream input;
+    private final DataOutputStream output;
+
+    public DaemonClient(int port) throws IOException {
+        Path tokenFile = ConversionDaemon.getTokenFile(port);
+        ensure(Files.isReadable(tokenFile), () -> new IOException("[error] No daemon token in " + tokenFile +
+                " (no daemon on port " + port + " of this user). Aborting."));
+        String token = new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8).trim();
+
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        try {
+            socket.setTcpNoDelay(true);
+            this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.writeUTF(token);
+            output.flush();
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            int port = CliHelper.getPort(args, "--port=");
+            String[] jobArgs = Arrays.stream(args)
+                    .filter(arg -> !arg.startsWith("--port="))
+                    .toArray(String[]::new);
+            try (DaemonClient client = new DaemonClient(port)) {
+                client.run(jobArgs);
+            }
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            System.exit(ConversionDaemon.EXIT_FAILURE);
+        }
+    }
+
+    /**
+     * Runs one job on the daemon (options of ImageConverter), throws its error message if it failed.
+     */
+    public void run(String... args) throws IOException {
+        ConversionDaemon.writeJob(output, toAbsolutePaths(args));
+        int exitCode;
+        String message;
+        try {
+            exitCode = input.readInt();
+            message = input.readUTF();
+        } catch (EOFException | SocketException e) {
+            throw new IOException("[error] Daemon closed the connection (invalid token or daemon stopped). " +
+                    "Aborting.");
+        }
+        ensure(exitCode == ConversionDaemon.EXIT_SUCCESS, () -> new IOException(message));
+    }
+
+    // the daemon has another working directory, "-" (standard input/output) is rejected by the daemon
+    private static String[] toAbsolutePaths(String[] args) {
+        String[] absoluteArgs = args.clone();
+        for (int i = 0; i < absoluteArgs.length; i++) {
+            for (String pathOption : PATH_OPTIONS) {
+                String path = absoluteArgs[i].startsWith(pathOption)
+                        ? absoluteArgs[i].substring(pathOption.length()) : null;
+                if (path != null && !path.isEmpty() && !CliHelper.isStandardStream(path)) {
+                    absoluteArgs[i] = pathOption + Paths.get(path).toAbsolutePath();
+                }
+            }
+        }
+        return absoluteArgs;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
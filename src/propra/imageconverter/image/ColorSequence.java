@@ -1,44 +1,106 @@
 package propra.imageconverter.image;
 
+import java.nio.ByteBuffer;
+
 
 /**
  * ColorSequence (enum) class:
  * Consists of two color sequences BGR and GBR and specifies their behaviour with
- * the abstract methods formatAsByteArray() and fromByteArray().
+ * the abstract methods writePixel() and readPixel().
  * <p>
  * The implementations are included directly with the respective color sequence.
  * This may be described as a weak form of Strategy Pattern.
+ * <p>
+ * Pixels are read from and written to byte arrays at a given offset (3 bytes per pixel),
+ * so no objects are created per pixel. Whole ranges of pixels are converted in bulk by
+ * the convert(...) methods.
  */
 
 public enum ColorSequence {
     BGR {
         @Override
-        public byte[] formatAsByteArray(Pixel p) {
-            return new byte[]{(byte) p.getB(), (byte) p.getG(), (byte) p.getR()};
+        public void writePixel(int pixel, byte[] bytes, int offset) {
+            bytes[offset] = (byte) Pixel.getB(pixel);
+            bytes[offset + 1] = (byte) Pixel.getG(pixel);
+            bytes[offset + 2] = (byte) Pixel.getR(pixel);
         }
 
         @Override
-        public Pixel fromByteArray(byte[] bytes) {
-            return new Pixel(Byte.toUnsignedInt(bytes[2]), Byte.toUnsignedInt(bytes[1]),
-                    Byte.toUnsignedInt(bytes[0]));
+        public int readPixel(byte[] bytes, int offset) {
+            return Pixel.of(Byte.toUnsignedInt(bytes[offset + 2]), Byte.toUnsignedInt(bytes[offset + 1]),
+                    Byte.toUnsignedInt(bytes[offset]));
         }
     },
 
     GBR {
         @Override
-        public byte[] formatAsByteArray(Pixel p) {
-            return new byte[]{(byte) p.getG(), (byte) p.getB(), (byte) p.getR()};
+        public void writePixel(int pixel, byte[] bytes, int offset) {
+            bytes[offset] = (byte) Pixel.getG(pixel);
+            bytes[offset + 1] = (byte) Pixel.getB(pixel);
+            bytes[offset + 2] = (byte) Pixel.getR(pixel);
         }
 
         @Override
-        public Pixel fromByteArray(byte[] bytes) {
-            return new Pixel(Byte.toUnsignedInt(bytes[2]), Byte.toUnsignedInt(bytes[0]),
-                    Byte.toUnsignedInt(bytes[1]));
+        public int readPixel(byte[] bytes, int offset) {
+            return Pixel.of(Byte.toUnsignedInt(bytes[offset + 2]), Byte.toUnsignedInt(bytes[offset]),
+                    Byte.toUnsignedInt(bytes[offset + 1]));
 
         }
     };
 
-    public abstract byte[] formatAsByteArray(Pixel pixel);
+    public static final int BYTES_PER_PIXEL = 3; // 24 bits per pixel
+
+    public abstract void writePixel(int pixel, byte[] bytes, int offset);
 
-    public abstract Pixel fromByteArray(byte[] bytes);
+    public abstract int readPixel(byte[] bytes, int offset);
+
+    /**
+     * Copies pixelCount pixels from source (in this color sequence) to target (in targetSequence).
+     * Source and target may be the same array.
+     */
+    public void convert(byte[] source, int sourceOffset, ColorSequence targetSequence,
+                        byte[] target, int targetOffset, int pixelCount) {
+        System.arraycopy(source, sourceOffset, target, targetOffset, pixelCount * BYTES_PER_PIXEL);
+        convert(target, targetOffset, targetSequence, pixelCount);
+    }
+
+    /**
+     * Converts pixelCount pixels starting at offset in place from this color sequence to targetSequence.
+     */
+    public void convert(byte[] bytes, int offset, ColorSequence targetSequence, int pixelCount) {
+        if (targetSequence == this) {
+            return;
+        }
+        // BGR and GBR only differ in the order of their first two bytes, so both directions swap them.
+        // Both bytes are read before they are written, which lets the JIT keep them in registers.
+        int end = offset + pixelCount * BYTES_PER_PIXEL;
+        for (int i = offset; i < end; i += BYTES_PER_PIXEL) {
+            byte first = bytes[i];
+            byte second = bytes[i + 1];
+            bytes[i] = second;
+            bytes[i + 1] = first;
+        }
+    }
+
+    /**
+     * Converts the pixels between position and limit of buffer in place from this color sequence to
+     * targetSequence. Position and limit are not changed.
+     */
+    public void convert(ByteBuffer buffer, ColorSequence targetSequence) {
+        int pixelCount = buffer.remaining() / BYTES_PER_PIXEL;
+        if (buffer.hasArray()) {
+            convert(buffer.array(), buffer.arrayOffset() + buffer.position(), targetSequence, pixelCount);
+            return;
+        }
+        if (targetSequence == this) {
+            return;
+        }
+        int end = buffer.position() + pixelCount * BYTES_PER_PIXEL;
+        for (int i = buffer.position(); i < end; i += BYTES_PER_PIXEL) {
+            byte first = buffer.get(i);
+            byte second = buffer.get(i + 1);
+            buffer.put(i, second);
+            buffer.put(i + 1, first);
+        }
+    }
 }
@@ -2,14 +2,14 @@ package propra.imageconverter.image;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.Arrays;
+
+import static propra.imageconverter.image.ColorSequence.BYTES_PER_PIXEL;
 
 /**
  * The abstract Packet class describes the behaviour of packets in three abstract methods
- * - writeToCompressedOutputStream(...)
+ * - writeToRleOutputStream(...)
  * - writeToUncompressedOutputStream(...)
  * - getUncompressedPixelCount()
- * - getAsUncompressedByteArray(...)
  * <p>
  * and two static methods
  * - createRlePacket(...)
@@ -17,134 +17,124 @@ import java.util.Arrays;
  * <p>
  * It also includes two static inner classes RlePacket and RawPacket that
  * implement Packet and its abstract methods.
+ * <p>
+ * Packets do not own their pixels. A packet references a range of a byte array (usually a
+ * scan line buffer of the reader) and is reused for every packet of its type via wrap(...).
+ * Therefore a packet is only valid while it is handed to a PacketWriter and must not be stored.
  */
 public abstract class Packet {
+    public static final int MAX_PIXEL_COUNT = 128;
+
+    // color sequence of the referenced bytes
+    final ColorSequence colorSequence;
+    // reused to convert pixels into the color sequence of the output
+    final byte[] conversionBuffer = new byte[MAX_PIXEL_COUNT * BYTES_PER_PIXEL];
+    byte[] bytes;
+    int offset;
+    int pixelCount;
+
+    private Packet(ColorSequence colorSequence) {
+        this.colorSequence = colorSequence;
+    }
 
-    public static Packet createRlePacket(int pixelCount, Pixel pixel) {
-        return new RlePacket(pixelCount, pixel);
+    public static Packet createRlePacket(ColorSequence colorSequence) {
+        return new RlePacket(colorSequence);
     }
 
-    public static Packet createRawPacket(Pixel[] pixels) {
-        return new RawPacket(pixels);
+    public static Packet createRawPacket(ColorSequence colorSequence) {
+        return new RawPacket(colorSequence);
+    }
+
+    /**
+     * Lets this packet reference pixelCount pixels starting at offset.
+     * For Rle packets only the first pixel is referenced, it is repeated pixelCount times.
+     */
+    public Packet wrap(byte[] bytes, int offset, int pixelCount) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.pixelCount = pixelCount;
+        return this;
     }
 
     public abstract void writeToRleOutputStream(OutputStream outputStream,
                                                 ColorSequence colorSequence) throws IOException;
 
-    public abstract byte[] getAsUncompressedByteArray(ColorSequence colorSequence);
-
     public abstract void writeToUncompressedOutputStream(OutputStream outputStream,
                                                          ColorSequence colorSequence) throws IOException;
 
-    public abstract int getUncompressedPixelCount();
+    public int getUncompressedPixelCount() {
+        return pixelCount;
+    }
 
     private static class RlePacket extends Packet {
 
-        // NOTE: in binary representation, repetition count is encoded minus one of this number.
-        // This field stores the actual pixel count!
-        private final int repetitionCount;
-        private final Pixel pixel;
-
-        RlePacket(int repetitionCount, Pixel pixel) {
-            this.repetitionCount = repetitionCount;
-            this.pixel = pixel;
+        RlePacket(ColorSequence colorSequence) {
+            super(colorSequence);
         }
 
         @Override
         public String toString() {
             return "RlePacket{" +
-                    "repetitionCount=" + repetitionCount +
-                    ", pixel=" + pixel +
+                    "repetitionCount=" + pixelCount +
+                    ", pixel=" + Pixel.toString(colorSequence.readPixel(bytes, offset)) +
                     '}';
         }
 
         @Override
         public void writeToRleOutputStream(OutputStream outputStream,
                                            ColorSequence colorSequence) throws IOException {
-            outputStream.write((byte) (128 + repetitionCount - 1));
-            outputStream.write(colorSequence.formatAsByteArray(pixel));
-        }
-
-        @Override
-        public byte[] getAsUncompressedByteArray(ColorSequence colorSequence) {
-            byte[] bytes = new byte[repetitionCount * 3];
-            byte[] p = colorSequence.formatAsByteArray(pixel);
-
-            for (int i = 0; i < repetitionCount * 3; i += 3) {
-                bytes[i] = p[0];
-                bytes[i + 1] = p[1];
-                bytes[i + 2] = p[2];
-            }
-            return bytes;
+            // NOTE: in binary representation, repetition count is encoded minus one.
+            outputStream.write((byte) (128 + pixelCount - 1));
+            this.colorSequence.convert(bytes, offset, colorSequence, conversionBuffer, 0, 1);
+            outputStream.write(conversionBuffer, 0, BYTES_PER_PIXEL);
         }
 
         @Override
         public void writeToUncompressedOutputStream(OutputStream outputStream,
                                                     ColorSequence colorSequence) throws IOException {
-            byte[] p = colorSequence.formatAsByteArray(pixel);
-            for (int i = 0; i < repetitionCount; i++) {
-                outputStream.write(p);
+            this.colorSequence.convert(bytes, offset, colorSequence, conversionBuffer, 0, 1);
+            for (int i = BYTES_PER_PIXEL; i < pixelCount * BYTES_PER_PIXEL; i++) {
+                conversionBuffer[i] = conversionBuffer[i - BYTES_PER_PIXEL];
             }
+            outputStream.write(conversionBuffer, 0, pixelCount * BYTES_PER_PIXEL);
         }
-
-        @Override
-        public int getUncompressedPixelCount() {
-            return repetitionCount;
-        }
-
-
     }
 
 
     private static class RawPacket extends Packet {
-        private final Pixel[] pixels;
 
-        RawPacket(Pixel[] pixels) {
-            this.pixels = pixels;
+        RawPacket(ColorSequence colorSequence) {
+            super(colorSequence);
         }
 
         @Override
         public String toString() {
+            StringBuilder pixels = new StringBuilder();
+            for (int i = 0; i < pixelCount; i++) {
+                pixels.append(i == 0 ? "" : ", ")
+                        .append(Pixel.toString(colorSequence.readPixel(bytes, offset + i * BYTES_PER_PIXEL)));
+            }
             return "RawPacket{" +
-                    "pixels=" + Arrays.toString(pixels) +
-                    '}';
+                    "pixels=[" + pixels +
+                    "]}";
         }
 
         @Override
         public void writeToRleOutputStream(OutputStream outputStream,
                                            ColorSequence colorSequence) throws IOException {
-            outputStream.write((byte) (pixels.length - 1)); // header for raw packet
-            for (Pixel pixel : pixels) {
-                outputStream.write(colorSequence.formatAsByteArray(pixel));
-            }
-
+            outputStream.write((byte) (pixelCount - 1)); // header for raw packet
+            writeToUncompressedOutputStream(outputStream, colorSequence);
         }
 
         @Override
         public void writeToUncompressedOutputStream(OutputStream outputStream,
                                                     ColorSequence colorSequence) throws IOException {
-            for (Pixel pixel : pixels) {
-                outputStream.write(colorSequence.formatAsByteArray(pixel));
+            if (this.colorSequence == colorSequence) {
+                outputStream.write(bytes, offset, pixelCount * BYTES_PER_PIXEL);
+            } else {
+                this.colorSequence.convert(bytes, offset, colorSequence, conversionBuffer, 0, pixelCount);
+                outputStream.write(conversionBuffer, 0, pixelCount * BYTES_PER_PIXEL);
             }
         }
-
-        @Override
-        public byte[] getAsUncompressedByteArray(ColorSequence colorSequence) {
-            byte[] bytes = new byte[pixels.length * 3];
-            int pixelIndex = 0;
-            for (int i = 0; i < pixels.length * 3; i += 3) {
-                byte[] p = colorSequence.formatAsByteArray(pixels[pixelIndex]);
-                pixelIndex++;
-                bytes[i] = p[0];
-                bytes[i + 1] = p[1];
-                bytes[i + 2] = p[2];
-            }
-            return bytes;
-        }
-
-        @Override
-        public int getUncompressedPixelCount() {
-            return pixels.length;
-        }
     }
 }
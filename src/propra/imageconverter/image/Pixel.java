@@ -1,57 +1,38 @@
 package propra.imageconverter.image;
 
-import java.util.Objects;
-
 /**
  * The pixel class represents pixels (24 bits per pixel) and their color values (RGB).
- * It offers getter-methods to access the pixel information and to compare pixel objects.
+ * <p>
+ * To avoid the creation of one object per pixel, a pixel is packed into a primitive int
+ * (0x00RRGGBB). The class offers static methods to pack and unpack the color values.
  */
-public class Pixel {
-
-    private final int R;
-    private final int G;
-    private final int B;
+public final class Pixel {
 
-    Pixel(int r, int g, int b) {
-        R = r;
-        G = g;
-        B = b;
+    private Pixel() {
     }
 
-    public int getR() {
-        return R;
+    public static int of(int r, int g, int b) {
+        return (r << 16) | (g << 8) | b;
     }
 
-    public int getG() {
-        return G;
+    public static int getR(int pixel) {
+        return (pixel >>> 16) & 0xFF;
     }
 
-    public int getB() {
-        return B;
+    public static int getG(int pixel) {
+        return (pixel >>> 8) & 0xFF;
     }
 
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        Pixel pixel = (Pixel) o;
-        return R == pixel.R &&
-                G == pixel.G &&
-                B == pixel.B;
+    public static int getB(int pixel) {
+        return pixel & 0xFF;
     }
 
-    @Override
-    public String toString() {
+    public static String toString(int pixel) {
         return "{" +
-                "R=0x" + Integer.toHexString(R) +
-                ", G=0x" + Integer.toHexString(G) +
-                ", B=0x" + Integer.toHexString(B) +
+                "R=0x" + Integer.toHexString(getR(pixel)) +
+                ", G=0x" + Integer.toHexString(getG(pixel)) +
+                ", B=0x" + Integer.toHexString(getB(pixel)) +
                 '}';
     }
 
-    @Override
-    public int hashCode() {
-        return Objects.hash(R, G, B);
-    }
-
 }
@@ -0,0 +1,49 @@
+package propra.imageconverter.io;
+
+import propra.imageconverter.io.reader.MappedInputStream;
+import propra.imageconverter.io.writer.FileImageOutput;
+import propra.imageconverter.io.writer.ImageOutput;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * IoBackend (enum) class:
+ * Consists of the two ways image files are read: buffered streams (default) and memory mapped files.
+ * The implementations are included directly with the respective backend.
+ * <p>
+ * Both backends write the output with a buffered stream: every written page of a mapping of the new
+ * output file costs a page fault and a zeroed page, which is slower than writing the same bytes to the file.
+ */
+public enum IoBackend {
+    STREAM {
+        @Override
+        public InputStream openInputStream(Path path) throws IOException {
+            return new BufferedInputStream(new FileInputStream(path.toFile()));
+        }
+
+        @Override
+        public ImageOutput openImageOutput(Path path) throws IOException {
+            return new FileImageOutput(path);
+        }
+    },
+
+    MAPPED {
+        @Override
+        public InputStream openInputStream(Path path) throws IOException {
+            return new MappedInputStream(path);
+        }
+
+        @Override
+        public ImageOutput openImageOutput(Path path) throws IOException {
+            return new FileImageOutput(path);
+        }
+    };
+
+    public abstract InputStream openInputStream(Path path) throws IOException;
+
+    public abstract ImageOutput openImageOutput(Path path) throws IOException;
+}
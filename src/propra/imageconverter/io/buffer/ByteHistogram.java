@@ -0,0 +1,155 @@
+package propra.imageconverter.io.buffer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ByteHistogram class counts the frequency of each byte value (index = unsigned byte value).
+ * <p>
+ * Large data is split into chunks of CHUNK_SIZE bytes. Each thread takes the next unprocessed chunk
+ * until all chunks are counted and keeps its own histogram, the histograms of the threads are merged
+ * at the end. Within a chunk the bytes are counted into four int tables in turns, so repeated byte
+ * values do not have to wait for the increment of the previous byte. The tables are allocated once by the
+ * caller (per thread, see createTables()) and reset by every count, so counting allocates nothing.
+ * The threads run on the pool of the caller (see WorkerPools), which is shared with other conversions.
+ */
+public final class ByteHistogram {
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int SCRATCH_SIZE = 64 * 1024;
+    private static final int TABLES = 4;
+
+    private ByteHistogram() {
+    }
+
+    /**
+     * Returns the count tables of count(byte[], int, int, long[], int[]), to be reused by one thread.
+     */
+    public static int[] createTables() {
+        return new int[TABLES * 256];
+    }
+
+    /**
+     * Adds the frequencies of the bytes in the given range to counts.
+     * tables (see createTables()) are zero before and after the call.
+     */
+    public static void count(byte[] bytes, int off, int len, long[] counts, int[] tables) {
+        int end = off + len;
+        int i = off;
+        for (; i + 3 < end; i += 4) {
+            tables[bytes[i] & 0xFF]++;
+            tables[256 + (bytes[i + 1] & 0xFF)]++;
+            tables[512 + (bytes[i + 2] & 0xFF)]++;
+            tables[768 + (bytes[i + 3] & 0xFF)]++;
+        }
+        for (; i < end; i++) {
+            tables[bytes[i] & 0xFF]++;
+        }
+
+        // merge the tables into counts and reset them for the next call
+        for (int value = 0; value < 256; value++) {
+            counts[value] += (long) tables[value] + tables[256 + value] + tables[512 + value] + tables[768 + value];
+            tables[value] = 0;
+            tables[256 + value] = 0;
+            tables[512 + value] = 0;
+            tables[768 + value] = 0;
+        }
+    }
+
+    /**
+     * Returns the frequencies of the remaining bytes of all buffers (the positions are not changed),
+     * counted by the given number of threads on the pool (not used for one thread).
+     */
+    public static long[] count(List<ByteBuffer> buffers, int threads, ExecutorService pool) throws IOException {
+        List<ByteBuffer> chunks = new ArrayList<>();
+        for (ByteBuffer buffer : buffers) {
+            for (int position = buffer.position(); position < buffer.limit(); position += CHUNK_SIZE) {
+                ByteBuffer chunk = buffer.duplicate();
+                chunk.position(position);
+                chunk.limit(Math.min(buffer.limit(), position + CHUNK_SIZE));
+                chunks.add(chunk);
+            }
+        }
+
+        int usedThreads = Math.min(threads, chunks.size());
+        if (usedThreads <= 1) {
+            return new ChunkCounter(chunks, new AtomicInteger()).call();
+        }
+
+        AtomicInteger nextChunk = new AtomicInteger();
+        try {
+            List<Future<long[]>> threadCounts = new ArrayList<>();
+            for (int i = 0; i < usedThreads; i++) {
+                threadCounts.add(pool.submit(new ChunkCounter(chunks, nextChunk)));
+            }
+
+            long[] counts = new long[256];
+            for (Future<long[]> threadCount : threadCounts) {
+                long[] countsOfThread = await(threadCount);
+                for (int value = 0; value < 256; value++) {
+                    counts[value] += countsOfThread[value];
+                }
+            }
+            return counts;
+        } finally {
+            // the pool is shared, so after a failure the other threads stop after their current chunk
+            nextChunk.set(chunks.size());
+        }
+    }
+
+    private static long[] await(Future<long[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("[error] Conversion was interrupted. Aborting.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Counts chunks into the histogram of one thread until no chunk is left.
+     */
+    private static class ChunkCounter implements Callable<long[]> {
+        private final List<ByteBuffer> chunks;
+        private final AtomicInteger nextChunk;
+
+        ChunkCounter(List<ByteBuffer> chunks, AtomicInteger nextChunk) {
+            this.chunks = chunks;
+            this.nextChunk = nextChunk;
+        }
+
+        @Override
+        public long[] call() {
+            long[] counts = new long[256];
+            int[] tables = createTables();
+            byte[] scratch = null;
+            int chunkIndex;
+            while ((chunkIndex = nextChunk.getAndIncrement()) < chunks.size()) {
+                ByteBuffer chunk = chunks.get(chunkIndex);
+                if (chunk.hasArray()) {
+                    count(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining(), counts, tables);
+                    continue;
+                }
+                // direct (e.g. memory mapped) buffers are copied piecewise
+                if (scratch == null) {
+                    scratch = new byte[SCRATCH_SIZE];
+                }
+                while (chunk.hasRemaining()) {
+                    int length = Math.min(scratch.length, chunk.remaining());
+                    chunk.get(scratch, 0, length);
+                    count(scratch, 0, length, counts, tables);
+                }
+            }
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package propra.imageconverter.io.buffer;
+
+import java.io.OutputStream;
+
+/**
+ * Output stream that discards all bytes and only counts them (e.g. to calculate the size of an output).
+ */
+public class CountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+        count++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) {
+        count += len;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
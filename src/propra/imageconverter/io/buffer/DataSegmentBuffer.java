@@ -0,0 +1,180 @@
+package propra.imageconverter.io.buffer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * The DataSegmentBuffer holds a data segment that needs to be read more than once
+ * (e.g. to count byte frequencies before huffman encoding).
+ * <p>
+ * Bytes are kept in memory blocks up to the memory limit. Everything beyond the limit is spilled
+ * into a temporary file, which is deleted when the buffer is closed.
+ * The frequency of each byte value is counted on request, in parallel over the memory blocks and the
+ * memory mapped spill file (see ByteHistogram).
+ * <p>
+ * Released memory blocks are kept per thread (up to a few blocks) and reused by the next buffer
+ * of the same thread, so converting many images in a row does not allocate new blocks each time.
+ */
+public class DataSegmentBuffer extends OutputStream {
+    public static final long DEFAULT_MEMORY_LIMIT = 256L * 1024 * 1024;
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int MAX_RECYCLED_BLOCKS = 4;
+    private static final long SPILL_WINDOW_SIZE = 256L * 1024 * 1024;
+    private static final ThreadLocal<ArrayDeque<byte[]>> RECYCLED_BLOCKS =
+            ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final long memoryLimit;
+    private final List<byte[]> blocks = new ArrayList<>();
+    private long size;
+    private long[] byteCounts;
+
+    private FileChannel spillChannel;
+    private OutputStream spillOutputStream;
+
+    public DataSegmentBuffer() {
+        this(DEFAULT_MEMORY_LIMIT);
+    }
+
+    public DataSegmentBuffer(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        // fill memory blocks first
+        while (len > 0 && spillOutputStream == null) {
+            int positionInBlock = (int) (size % BLOCK_SIZE);
+            if (positionInBlock == 0) {
+                if ((long) (blocks.size() + 1) * BLOCK_SIZE > memoryLimit) {
+                    openSpillFile();
+                    break;
+                }
+                blocks.add(allocateBlock());
+            }
+            int length = Math.min(len, BLOCK_SIZE - positionInBlock);
+            System.arraycopy(bytes, off, blocks.get(blocks.size() - 1), positionInBlock, length);
+            off += length;
+            len -= length;
+            size += length;
+        }
+
+        if (len > 0) {
+            spillOutputStream.write(bytes, off, len);
+            size += len;
+        }
+    }
+
+    private static byte[] allocateBlock() {
+        byte[] block = RECYCLED_BLOCKS.get().poll();
+        return block != null ? block : new byte[BLOCK_SIZE];
+    }
+
+    private void openSpillFile() throws IOException {
+        Path spillFile = Files.createTempFile("propra_", ".spill");
+        spillChannel = FileChannel.open(spillFile, READ, WRITE, DELETE_ON_CLOSE);
+        spillOutputStream = new BufferedOutputStream(Channels.newOutputStream(spillChannel));
+    }
+
+    /**
+     * Number of bytes written to this buffer.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Frequency of each byte value (index = unsigned byte value).
+     * Bytes must not be written afterwards.
+     */
+    public long[] getByteCounts() throws IOException {
+        return getByteCounts(1, null);
+    }
+
+    /**
+     * Frequency of each byte value, counted by the given number of threads on the pool (see ByteHistogram).
+     * Bytes must not be written afterwards.
+     */
+    public long[] getByteCounts(int threads, ExecutorService pool) throws IOException {
+        if (byteCounts == null) {
+            byteCounts = ByteHistogram.count(getByteBuffers(), threads, pool);
+        }
+        return byteCounts.clone();
+    }
+
+    // memory blocks and spill file (memory mapped in windows) as byte buffers
+    private List<ByteBuffer> getByteBuffers() throws IOException {
+        long bytesInMemory = Math.min(size, (long) blocks.size() * BLOCK_SIZE);
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            int length = (int) Math.min(BLOCK_SIZE, bytesInMemory - (long) i * BLOCK_SIZE);
+            buffers.add(ByteBuffer.wrap(blocks.get(i), 0, length));
+        }
+        if (spillOutputStream != null) {
+            spillOutputStream.flush();
+            long spillSize = size - bytesInMemory;
+            for (long position = 0; position < spillSize; position += SPILL_WINDOW_SIZE) {
+                buffers.add(spillChannel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(SPILL_WINDOW_SIZE, spillSize - position)));
+            }
+        }
+        return buffers;
+    }
+
+    /**
+     * Returns a stream over all bytes written so far. Bytes must not be written afterwards
+     * and only one stream may be read at a time.
+     */
+    public InputStream openInputStream() throws IOException {
+        long bytesInMemory = Math.min(size, (long) blocks.size() * BLOCK_SIZE);
+        List<InputStream> streams = new ArrayList<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            int length = (int) Math.min(BLOCK_SIZE, bytesInMemory - (long) i * BLOCK_SIZE);
+            streams.add(new ByteArrayInputStream(blocks.get(i), 0, length));
+        }
+        if (spillOutputStream != null) {
+            spillOutputStream.flush();
+            spillChannel.position(0);
+            // the spill file must stay open (and therefore existing) until the buffer is closed
+            streams.add(new BufferedInputStream(new FilterInputStream(Channels.newInputStream(spillChannel)) {
+                @Override
+                public void close() {
+                }
+            }));
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    /**
+     * Releases the memory blocks and deletes the spill file.
+     */
+    @Override
+    public void close() throws IOException {
+        ArrayDeque<byte[]> recycledBlocks = RECYCLED_BLOCKS.get();
+        for (byte[] block : blocks) {
+            if (recycledBlocks.size() >= MAX_RECYCLED_BLOCKS) {
+                break;
+            }
+            recycledBlocks.push(block);
+        }
+        blocks.clear();
+        if (spillChannel != null) {
+            spillChannel.close();
+        }
+    }
+}
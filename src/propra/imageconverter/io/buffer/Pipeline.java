@@ -0,0 +1,298 @@
+package propra.imageconverter.io.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.*;
+
+/**
+ * The Pipeline runs a conversion in three stages on separate threads, so reading, converting and
+ * writing overlap (e.g. the next blocks are read from disk while the current ones are compressed):
+ * - reader thread: reads blocks of the input
+ * - converter thread: runs the Stage on a stream over the read blocks and a stream into output blocks
+ * - writer (calling thread): writes the output blocks in order
+ * <p>
+ * The stages are connected by bounded queues of reused blocks (BLOCKS_PER_QUEUE blocks of BLOCK_SIZE
+ * bytes per direction). A stage waits when the next stage falls behind (back pressure), so the memory
+ * of a pipeline is fixed (see WORKING_MEMORY).
+ * <p>
+ * An error of the reader is thrown by the input stream of the converter, the first error of a pipeline
+ * stops the other stages and is thrown by run(...). The output is identical to the output of the Stage
+ * run directly on input and output.
+ */
+public class Pipeline {
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int BLOCKS_PER_QUEUE = 4;
+    // memory of the blocks of a pipeline
+    public static final long WORKING_MEMORY = 2L * BLOCKS_PER_QUEUE * BLOCK_SIZE;
+
+    private final BlockingQueue<Block> freeInputBlocks = createBlocks();
+    private final BlockingQueue<Block> readInputBlocks = new ArrayBlockingQueue<>(BLOCKS_PER_QUEUE + 1);
+    private final BlockingQueue<Block> freeOutputBlocks = createBlocks();
+    private final BlockingQueue<Block> convertedOutputBlocks = new ArrayBlockingQueue<>(BLOCKS_PER_QUEUE + 1);
+
+    private Pipeline() {
+    }
+
+    /**
+     * Runs the stage on the pipelined input and output.
+     * The output stream of the stage stays usable after run(...) returned, further bytes (e.g. the end
+     * of a huffman data segment written by a stream created by the stage) are written directly into output.
+     */
+    public static void run(InputStream input, OutputStream output, Stage stage) throws IOException {
+        new Pipeline().runStages(input, output, stage);
+    }
+
+    private void runStages(InputStream input, OutputStream output, Stage stage) throws IOException {
+        BlockOutputStream stageOutput = new BlockOutputStream(output);
+        // not a shared pool (see WorkerPools): the stages block on each other's queues, so they need threads
+        // of their own, and a failed pipeline stops the other stage by interrupting it (shutdownNow)
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            pool.submit(() -> read(input));
+            Future<Void> converter = pool.submit(() -> convert(stage, stageOutput));
+            write(output);
+            await(converter);
+            stageOutput.direct = true;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Void read(InputStream input) throws InterruptedException {
+        Block end = new Block(null);
+        try {
+            while (true) {
+                Block block = freeInputBlocks.take();
+                block.length = readBlock(input, block.bytes);
+                if (block.length == 0) {
+                    freeInputBlocks.put(block);
+                    break;
+                }
+                readInputBlocks.put(block);
+            }
+        } catch (IOException | RuntimeException e) {
+            end.failure = e;
+        } finally {
+            // there is always room for the end marker (only BLOCKS_PER_QUEUE blocks exist)
+            readInputBlocks.put(end);
+        }
+        return null;
+    }
+
+    private Void convert(Stage stage, BlockOutputStream stageOutput) throws IOException, InterruptedException {
+        try {
+            BlockInputStream stageInput = new BlockInputStream();
+            stage.run(stageInput, stageOutput);
+            // the input is read to its end like before (e.g. to verify the size of a propra data segment)
+            stageInput.skipToEnd();
+            stageOutput.flushBlock();
+        } finally {
+            convertedOutputBlocks.put(new Block(null));
+        }
+        return null;
+    }
+
+    private void write(OutputStream output) throws IOException {
+        try {
+            Block block;
+            while ((block = convertedOutputBlocks.take()).bytes != null) {
+                output.write(block.bytes, 0, block.length);
+                freeOutputBlocks.put(block);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("[error] Conversion was interrupted. Aborting.");
+        }
+    }
+
+    // fills the block as far as possible, returns 0 at the end of the input
+    private static int readBlock(InputStream input, byte[] bytes) throws IOException {
+        int length = 0;
+        int readBytes;
+        while (length < bytes.length && (readBytes = input.read(bytes, length, bytes.length - length)) >= 0) {
+            length += readBytes;
+        }
+        return length;
+    }
+
+    private static BlockingQueue<Block> createBlocks() {
+        BlockingQueue<Block> blocks = new ArrayBlockingQueue<>(BLOCKS_PER_QUEUE);
+        for (int i = 0; i < BLOCKS_PER_QUEUE; i++) {
+            blocks.add(new Block(new byte[BLOCK_SIZE]));
+        }
+        return blocks;
+    }
+
+    private static void await(Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("[error] Conversion was interrupted. Aborting.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static InterruptedIOException interrupted() {
+        Thread.currentThread().interrupt();
+        return new InterruptedIOException("[error] Conversion was interrupted. Aborting.");
+    }
+
+    /**
+     * The conversion run by the converter thread.
+     */
+    @FunctionalInterface
+    public interface Stage {
+        void run(InputStream inputStream, OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * Bytes of a queue, an end marker has no bytes (and the error of its stage, if any).
+     */
+    private static class Block {
+        private final byte[] bytes;
+        private int length;
+        private Exception failure;
+
+        Block(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Input of the stage: the blocks of the reader thread.
+     */
+    private class BlockInputStream extends InputStream {
+        private Block block;
+        private int position;
+        private boolean end;
+
+        @Override
+        public int read() throws IOException {
+            if (!nextBlockIfEmpty()) {
+                return -1;
+            }
+            return Byte.toUnsignedInt(block.bytes[position++]);
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextBlockIfEmpty()) {
+                return -1;
+            }
+            int length = Math.min(len, block.length - position);
+            System.arraycopy(block.bytes, position, bytes, off, length);
+            position += length;
+            return length;
+        }
+
+        void skipToEnd() throws IOException {
+            while (nextBlockIfEmpty()) {
+                position = block.length;
+            }
+        }
+
+        // returns false at the end of the input
+        private boolean nextBlockIfEmpty() throws IOException {
+            if (block != null && position < block.length) {
+                return true;
+            }
+            if (end) {
+                return false;
+            }
+            try {
+                if (block != null) {
+                    freeInputBlocks.put(block);
+                    block = null;
+                }
+                Block next = readInputBlocks.take();
+                if (next.bytes == null) {
+                    end = true;
+                    if (next.failure instanceof IOException) {
+                        throw (IOException) next.failure;
+                    }
+                    if (next.failure != null) {
+                        throw (RuntimeException) next.failure;
+                    }
+                    return false;
+                }
+                block = next;
+                position = 0;
+                return true;
+            } catch (InterruptedException e) {
+                throw interrupted();
+            }
+        }
+    }
+
+    /**
+     * Output of the stage: blocks for the writer, after the pipeline ended bytes are written directly.
+     */
+    private class BlockOutputStream extends OutputStream {
+        private final OutputStream output;
+        private boolean direct;
+        private Block block;
+
+        BlockOutputStream(OutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            if (direct) {
+                output.write(bytes, off, len);
+                return;
+            }
+            try {
+                while (len > 0) {
+                    if (block == null) {
+                        block = freeOutputBlocks.take();
+                        block.length = 0;
+                    }
+                    int length = Math.min(len, block.bytes.length - block.length);
+                    System.arraycopy(bytes, off, block.bytes, block.length, length);
+                    block.length += length;
+                    off += length;
+                    len -= length;
+                    if (block.length == block.bytes.length) {
+                        flushBlock();
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw interrupted();
+            }
+        }
+
+        // hands the current block to the writer
+        void flushBlock() throws InterruptedException {
+            if (block != null) {
+                (block.length > 0 ? convertedOutputBlocks : freeOutputBlocks).put(block);
+                block = null;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (direct) {
+                output.flush();
+            }
+        }
+    }
+}
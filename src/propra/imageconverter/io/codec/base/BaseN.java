@@ -3,6 +3,7 @@ package propra.imageconverter.io.codec.base;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 
 import static propra.imageconverter.util.Validator.ensure;
 
@@ -10,17 +11,28 @@ import static propra.imageconverter.util.Validator.ensure;
  * The BaseN class is responsible for encoding any file to Base N and for decoding .base-n or
  * .base-32 files. The alphabet for decoding is handed over by the ImageConverter-class.
  * Supported base N codecs are Base 2, 4, 8, 16, 32, 32_hex, and 64.
+ * <p>
+ * Data is processed in blocks of whole chunks (bytesPerChunk bytes = charsPerChunk characters).
+ * Characters are written and read as single (ASCII) bytes. Characters are found with a reverse
+ * look up table (256 entries) instead of searching the alphabet. Base 16, 32 and 64 have their own
+ * loops encoding/decoding a whole chunk at once, all other bases use a generic bit buffer.
+ * <p>
+ * Decoding is lenient: characters not included in the alphabet are decoded as the last character
+ * of the alphabet, bits that do not make up a whole byte at the end are ignored.
  */
 public class BaseN {
     private static final int BITS_PER_CHAR = 8;
+    private static final int CHUNKS_PER_BLOCK = 16 * 1024;
 
     // alphabet
     private final String alphabet;
-    private final char[] alphabetChars;
+    private final byte[] alphabetBytes;
+    private final byte[] reverseAlphabet = new byte[256];
 
     // base N variables needed for encoding/decoding
     private final int bitsPerEncodedByte;
     private final int bytesPerChunk;
+    private final int charsPerChunk;
     private final int mask;
 
 
@@ -31,18 +43,19 @@ public class BaseN {
         );
 
         this.alphabet = alphabet;
-        this.alphabetChars = alphabet.toCharArray();
+        this.alphabetBytes = new byte[alphabet.length()];
 
-        // check if alphabet has unique characters
-        for (char character : alphabetChars) {
-            long count = alphabet.chars().filter(c -> c == character).count();
-            ensure(count == 1,
+        // check if alphabet has unique characters of 1 byte (ASCII)
+        for (int i = 0; i < alphabet.length(); i++) {
+            char character = alphabet.charAt(i);
+            ensure(character < 0x80 && alphabet.indexOf(character) == i,
                     () -> new IllegalArgumentException("[error] Invalid alphabet. Aborting.")
             );
+            alphabetBytes[i] = (byte) character;
         }
 
         // case: base of n
-        switch (alphabetChars.length) {
+        switch (alphabetBytes.length) {
             case 2: // base 2
                 this.bitsPerEncodedByte = 1;
                 this.bytesPerChunk = 1;
@@ -70,91 +83,211 @@ public class BaseN {
             default:
                 throw new IllegalArgumentException("[error] Codec is not supported. Aborting.]");
         }
+        this.charsPerChunk = bytesPerChunk * BITS_PER_CHAR / bitsPerEncodedByte;
 
         // get bitmask, correct value for 0 indexing
-        this.mask = alphabetChars.length - 1;
+        this.mask = alphabetBytes.length - 1;
+
+        // unknown characters are decoded like the last character of the alphabet
+        Arrays.fill(reverseAlphabet, (byte) mask);
+        for (int i = 0; i < alphabetBytes.length; i++) {
+            reverseAlphabet[alphabetBytes[i] & 0xFF] = (byte) i;
+        }
+    }
+
+    public String getAlphabet() {
+        return alphabet;
+    }
+
+    public int getBytesPerChunk() {
+        return bytesPerChunk;
     }
 
-    private static long addZeroBits(long buffer, int fillerBits) {
-        buffer <<= fillerBits; // fill with additional zeros
-        return buffer;
+    public int getCharsPerChunk() {
+        return charsPerChunk;
     }
 
-    public void encodeToBaseN(InputStream inputStream, java.io.Writer writer) throws IOException {
-        byte[] chunk = new byte[bytesPerChunk];
+    /**
+     * Number of characters of the encoded data.
+     */
+    public long getEncodedLength(long byteCount) {
+        return (byteCount * BITS_PER_CHAR + bitsPerEncodedByte - 1) / bitsPerEncodedByte;
+    }
+
+    /**
+     * Number of bytes of the decoded data.
+     */
+    public long getDecodedLength(long charCount) {
+        return charCount * bitsPerEncodedByte / BITS_PER_CHAR;
+    }
 
+    public void encodeToBaseN(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] bytes = new byte[bytesPerChunk * CHUNKS_PER_BLOCK];
+        byte[] chars = new byte[charsPerChunk * CHUNKS_PER_BLOCK];
+
+        // blocks are filled completely, so only the last block may end with an incomplete chunk
         int readBytes;
-        while ((readBytes = inputStream.read(chunk)) != -1) {
-
-            // buffer idea from  https://stackoverflow.com/a/12456674
-            // copy bytes to buffer for easier traversal.
-            long buffer = 0; // buffer of max. 64 bits
-
-
-            // The aim of the following loop is to write the bytes into the buffer as shown in
-            // https://de.wikipedia.org/wiki/Base32 (Grundprinzip).
-            // Byte after byte will be read and after each byte is copied into the buffer,
-            // a shift of 8 bits occurs to the left, so the next byte will be placed to
-            // to the right (index 0 to 7). The shift does usually not occur after the last byte.
-            // But in cases where (chunkBitCount % bitsPerEncodedByte != 0),
-            // additional zeros are needed to guarantee a correct chunk size
-            // (= last shift with filler bits) and an additional shift occurs.
-            int bufferLength = 0;
-            int fillerBits = bitsPerEncodedByte - 1; // max. needed filler bits
-            int copiedBitsInBuffer = readBytes * BITS_PER_CHAR;
-
-            int processedByteIndex = 0;
-            while (readBytes > processedByteIndex) {
-                buffer |= chunk[processedByteIndex] & 0xFF; // take byte and copy set bits to buffer
-                bufferLength += BITS_PER_CHAR;
-                if (processedByteIndex + 1 == readBytes) { // case last byte
-                    if ((copiedBitsInBuffer % bitsPerEncodedByte) != 0) {
-                        buffer = addZeroBits(buffer, fillerBits);
-                        bufferLength += fillerBits;
-                        break;
-                    }
-                } else { // case all other bytes before last byte
-                    buffer = addZeroBits(buffer, BITS_PER_CHAR);
-                    // byte is put from index 0 to index 7
-                }
-                processedByteIndex++;
-            }
+        while ((readBytes = readBlock(inputStream, bytes)) > 0) {
+            int encodedChars = encode(bytes, 0, readBytes, chars, 0);
+            outputStream.write(chars, 0, encodedChars);
+        }
+    }
 
-            int bitsUsedForEncoding = 0;
-            while (bitsUsedForEncoding < copiedBitsInBuffer) {
-                int lengthOfShiftToRight = getLengthOfShiftToRight(bufferLength, bitsUsedForEncoding);
-                int index = getIndex(buffer, lengthOfShiftToRight);
-                writer.write(alphabetChars[index]);
-                bitsUsedForEncoding += bitsPerEncodedByte;
-            }
+    public void decodeFromBaseN(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] chars = new byte[charsPerChunk * CHUNKS_PER_BLOCK];
+        byte[] bytes = new byte[bytesPerChunk * CHUNKS_PER_BLOCK];
+
+        int readChars;
+        while ((readChars = readBlock(inputStream, chars)) > 0) {
+            int decodedBytes = decode(chars, 0, readChars, bytes, 0);
+            outputStream.write(bytes, 0, decodedBytes);
         }
     }
 
-    public void decodeFromBaseN(java.io.Reader reader, OutputStream outputStream) throws IOException {
-        short buffer = 0; // buffer of max. 16 bits
+    /**
+     * Encodes length bytes into chars starting at charsOffset and returns the number of characters.
+     * If length is no multiple of bytesPerChunk, the bits of the last character are filled with zeros.
+     */
+    public int encode(byte[] bytes, int offset, int length, byte[] chars, int charsOffset) {
+        int wholeChunks = length / bytesPerChunk;
+        int end = offset + wholeChunks * bytesPerChunk;
+        int charIndex = charsOffset;
+        int byteIndex = offset;
+
+        switch (bitsPerEncodedByte) {
+            case 4: // base 16: 1 byte = 2 characters
+                for (; byteIndex < end; byteIndex++) {
+                    int b = bytes[byteIndex];
+                    chars[charIndex++] = alphabetBytes[(b >>> 4) & 0x0F];
+                    chars[charIndex++] = alphabetBytes[b & 0x0F];
+                }
+                break;
+            case 5: // base 32: 5 bytes = 8 characters
+                for (; byteIndex < end; byteIndex += 5) {
+                    long chunk = (bytes[byteIndex] & 0xFFL) << 32
+                            | (bytes[byteIndex + 1] & 0xFFL) << 24
+                            | (bytes[byteIndex + 2] & 0xFFL) << 16
+                            | (bytes[byteIndex + 3] & 0xFFL) << 8
+                            | (bytes[byteIndex + 4] & 0xFFL);
+                    chars[charIndex] = alphabetBytes[(int) (chunk >>> 35) & 0x1F];
+                    chars[charIndex + 1] = alphabetBytes[(int) (chunk >>> 30) & 0x1F];
+                    chars[charIndex + 2] = alphabetBytes[(int) (chunk >>> 25) & 0x1F];
+                    chars[charIndex + 3] = alphabetBytes[(int) (chunk >>> 20) & 0x1F];
+                    chars[charIndex + 4] = alphabetBytes[(int) (chunk >>> 15) & 0x1F];
+                    chars[charIndex + 5] = alphabetBytes[(int) (chunk >>> 10) & 0x1F];
+                    chars[charIndex + 6] = alphabetBytes[(int) (chunk >>> 5) & 0x1F];
+                    chars[charIndex + 7] = alphabetBytes[(int) chunk & 0x1F];
+                    charIndex += 8;
+                }
+                break;
+            case 6: // base 64: 3 bytes = 4 characters
+                for (; byteIndex < end; byteIndex += 3) {
+                    int chunk = (bytes[byteIndex] & 0xFF) << 16
+                            | (bytes[byteIndex + 1] & 0xFF) << 8
+                            | (bytes[byteIndex + 2] & 0xFF);
+                    chars[charIndex] = alphabetBytes[chunk >>> 18];
+                    chars[charIndex + 1] = alphabetBytes[(chunk >>> 12) & 0x3F];
+                    chars[charIndex + 2] = alphabetBytes[(chunk >>> 6) & 0x3F];
+                    chars[charIndex + 3] = alphabetBytes[chunk & 0x3F];
+                    charIndex += 4;
+                }
+                break;
+            default:
+                break;
+        }
+
+        // generic bit buffer for the remaining bytes (all bytes for base 2, 4 and 8)
+        long buffer = 0;
         int bufferLength = 0;
+        for (; byteIndex < offset + length; byteIndex++) {
+            buffer = (buffer << BITS_PER_CHAR) | (bytes[byteIndex] & 0xFF);
+            bufferLength += BITS_PER_CHAR;
+            while (bufferLength >= bitsPerEncodedByte) {
+                bufferLength -= bitsPerEncodedByte;
+                chars[charIndex++] = alphabetBytes[(int) (buffer >>> bufferLength) & mask];
+            }
+        }
+        if (bufferLength > 0) { // fill last character with zeros
+            chars[charIndex++] = alphabetBytes[(int) (buffer << (bitsPerEncodedByte - bufferLength)) & mask];
+        }
+        return charIndex - charsOffset;
+    }
 
-        int inputByte;
-        while ((inputByte = reader.read()) != -1) {
+    /**
+     * Decodes length chars into bytes starting at bytesOffset and returns the number of bytes.
+     * Bits of the last characters that do not make up a whole byte are ignored.
+     */
+    public int decode(byte[] chars, int offset, int length, byte[] bytes, int bytesOffset) {
+        int wholeChunks = length / charsPerChunk;
+        int end = offset + wholeChunks * charsPerChunk;
+        int byteIndex = bytesOffset;
+        int charIndex = offset;
 
-            char c = (char) inputByte; // get char from input byte
+        switch (bitsPerEncodedByte) {
+            case 4: // base 16: 2 characters = 1 byte
+                for (; charIndex < end; charIndex += 2) {
+                    bytes[byteIndex++] = (byte) (reverseAlphabet[chars[charIndex] & 0xFF] << 4
+                            | reverseAlphabet[chars[charIndex + 1] & 0xFF]);
+                }
+                break;
+            case 5: // base 32: 8 characters = 5 bytes
+                for (; charIndex < end; charIndex += 8) {
+                    long chunk = (long) reverseAlphabet[chars[charIndex] & 0xFF] << 35
+                            | (long) reverseAlphabet[chars[charIndex + 1] & 0xFF] << 30
+                            | (long) reverseAlphabet[chars[charIndex + 2] & 0xFF] << 25
+                            | (long) reverseAlphabet[chars[charIndex + 3] & 0xFF] << 20
+                            | (long) reverseAlphabet[chars[charIndex + 4] & 0xFF] << 15
+                            | reverseAlphabet[chars[charIndex + 5] & 0xFF] << 10
+                            | reverseAlphabet[chars[charIndex + 6] & 0xFF] << 5
+                            | reverseAlphabet[chars[charIndex + 7] & 0xFF];
+                    bytes[byteIndex] = (byte) (chunk >>> 32);
+                    bytes[byteIndex + 1] = (byte) (chunk >>> 24);
+                    bytes[byteIndex + 2] = (byte) (chunk >>> 16);
+                    bytes[byteIndex + 3] = (byte) (chunk >>> 8);
+                    bytes[byteIndex + 4] = (byte) chunk;
+                    byteIndex += 5;
+                }
+                break;
+            case 6: // base 64: 4 characters = 3 bytes
+                for (; charIndex < end; charIndex += 4) {
+                    int chunk = reverseAlphabet[chars[charIndex] & 0xFF] << 18
+                            | reverseAlphabet[chars[charIndex + 1] & 0xFF] << 12
+                            | reverseAlphabet[chars[charIndex + 2] & 0xFF] << 6
+                            | reverseAlphabet[chars[charIndex + 3] & 0xFF];
+                    bytes[byteIndex] = (byte) (chunk >>> 16);
+                    bytes[byteIndex + 1] = (byte) (chunk >>> 8);
+                    bytes[byteIndex + 2] = (byte) chunk;
+                    byteIndex += 3;
+                }
+                break;
+            default:
+                break;
+        }
 
-            buffer |= alphabet.indexOf(c) & mask; // copy set bits from read character to buffer
+        // generic bit buffer for the remaining characters (all characters for base 2, 4 and 8)
+        int buffer = 0;
+        int bufferLength = 0;
+        for (; charIndex < offset + length; charIndex++) {
+            buffer = (buffer << bitsPerEncodedByte) | reverseAlphabet[chars[charIndex] & 0xFF];
             bufferLength += bitsPerEncodedByte;
             if (bufferLength >= BITS_PER_CHAR) { // always extract 8 bits when possible
-                bufferLength -= BITS_PER_CHAR; // minus 8 bits
-                outputStream.write((byte) ((buffer >> bufferLength) & 0xFF)); // extract first 8 bits
+                bufferLength -= BITS_PER_CHAR;
+                bytes[byteIndex++] = (byte) (buffer >>> bufferLength);
             }
-            buffer = (short) addZeroBits(buffer, bitsPerEncodedByte); // space for new bits starting at index 0
         }
+        return byteIndex - bytesOffset;
     }
 
-    private int getLengthOfShiftToRight(int bufferLength, int bitsUsedForEncoding) {
-        return bufferLength - bitsPerEncodedByte - bitsUsedForEncoding;
-    }
-
-    private int getIndex(long buffer, int lengthOfShiftToRight) {
-        return (int) (buffer >> lengthOfShiftToRight) & mask;
+    // reads until the array is full or the stream ends
+    private static int readBlock(InputStream inputStream, byte[] block) throws IOException {
+        int length = 0;
+        while (length < block.length) {
+            int readBytes = inputStream.read(block, length, block.length - length);
+            if (readBytes < 0) {
+                break;
+            }
+            length += readBytes;
+        }
+        return length;
     }
-
 }
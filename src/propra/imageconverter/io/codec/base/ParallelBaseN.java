@@ -0,0 +1,127 @@
+package propra.imageconverter.io.codec.base;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ParallelBaseN class encodes/decodes files with several threads.
+ * <p>
+ * Chunks of BaseN are encoded independently of each other, so the input is split into blocks of
+ * CHUNKS_PER_BLOCK whole chunks. The position of a block in the output follows from its position in
+ * the input (a block of bytes always gives the same number of characters and vice versa, only the
+ * last block may be shorter). Each thread takes the next block, reads it with a positional read,
+ * encodes/decodes it and writes it with a positional write. The output is identical to the output
+ * of the sequential BaseN methods.
+ * <p>
+ * The threads run on the pool of the caller (see WorkerPools), which is shared with other conversions.
+ */
+public final class ParallelBaseN {
+    private static final int CHUNKS_PER_BLOCK = 64 * 1024;
+
+    private ParallelBaseN() {
+    }
+
+    /**
+     * Encodes inputLength bytes of input starting at inputPosition into output starting at outputPosition.
+     */
+    public static void encode(BaseN baseN, FileChannel input, long inputPosition, long inputLength,
+                              FileChannel output, long outputPosition, int threads,
+                              ExecutorService pool) throws IOException {
+        code(baseN::encode, baseN.getBytesPerChunk() * CHUNKS_PER_BLOCK,
+                baseN.getCharsPerChunk() * CHUNKS_PER_BLOCK,
+                input, inputPosition, inputLength, output, outputPosition, threads, pool);
+    }
+
+    /**
+     * Decodes inputLength characters of input starting at inputPosition into output starting at
+     * outputPosition.
+     */
+    public static void decode(BaseN baseN, FileChannel input, long inputPosition, long inputLength,
+                              FileChannel output, long outputPosition, int threads,
+                              ExecutorService pool) throws IOException {
+        code(baseN::decode, baseN.getCharsPerChunk() * CHUNKS_PER_BLOCK,
+                baseN.getBytesPerChunk() * CHUNKS_PER_BLOCK,
+                input, inputPosition, inputLength, output, outputPosition, threads, pool);
+    }
+
+    private static void code(BlockCoder blockCoder, int inputBlockSize, int outputBlockSize,
+                             FileChannel input, long inputPosition, long inputLength,
+                             FileChannel output, long outputPosition, int threads,
+                             ExecutorService pool) throws IOException {
+        long blocks = (inputLength + inputBlockSize - 1) / inputBlockSize;
+        int usedThreads = (int) Math.max(1, Math.min(threads, blocks));
+        AtomicLong nextBlock = new AtomicLong();
+
+        List<Future<Void>> workers = new ArrayList<>();
+        try {
+            for (int i = 0; i < usedThreads; i++) {
+                workers.add(pool.submit(() -> {
+                    byte[] inputBlock = new byte[inputBlockSize];
+                    byte[] outputBlock = new byte[outputBlockSize];
+                    long block;
+                    while ((block = nextBlock.getAndIncrement()) < blocks) {
+                        long offset = block * inputBlockSize;
+                        int length = (int) Math.min(inputBlockSize, inputLength - offset);
+                        readFully(input, inputBlock, length, inputPosition + offset);
+                        int outputLength = blockCoder.code(inputBlock, 0, length, outputBlock, 0);
+                        writeFully(output, outputBlock, outputLength, outputPosition + block * outputBlockSize);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> worker : workers) {
+                await(worker);
+            }
+        } finally {
+            // the pool is shared, so after a failure the other threads stop after their current block
+            nextBlock.set(blocks);
+        }
+    }
+
+    private static void readFully(FileChannel channel, byte[] bytes, int length, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("[error] Unexpected end-of-file. Aborting.");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes, int length, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static void await(Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("[error] Conversion was interrupted. Aborting.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Encodes or decodes a block (BaseN::encode or BaseN::decode).
+     */
+    @FunctionalInterface
+    private interface BlockCoder {
+        int code(byte[] input, int offset, int length, byte[] output, int outputOffset);
+    }
+}
@@ -3,35 +3,110 @@ package propra.imageconverter.io.codec.huffman;
 import java.io.IOException;
 import java.io.InputStream;
 
+/**
+ * Reads bits (most significant bit first) from an input stream.
+ * <p>
+ * The input stream is read in blocks into an internal byte array. Bits are moved from this array
+ * into a 64 bit accumulator, so up to 32 bits can be looked at with peekBits(...) and consumed with
+ * skipBits(...) without calling the input stream.
+ * Bytes are read ahead, so the input stream must not be read by others afterwards.
+ */
 public class BitStreamReader {
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_BUFFERED_BITS = 56; // refill byte-wise as long as a whole byte fits
+
     private final InputStream inputStream;
-    private int bitBuffer;
-    private short remainingBitsInBuffer;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition;
+    private int bufferLength;
+    private long bitBuffer;
+    private int bitsInBuffer;
+    private boolean endOfStream;
 
     public BitStreamReader(InputStream inputStream) {
         this.inputStream = inputStream;
         this.bitBuffer = 0;
-        this.remainingBitsInBuffer = 0;
+        this.bitsInBuffer = 0;
+        this.endOfStream = false;
     }
 
     public int readBit() throws IOException {
-        if (remainingBitsInBuffer == 0) {
-            bitBuffer = (short) inputStream.read();
-            if (bitBuffer == -1) {
-                return -1; //EOF reached
-            }
-            remainingBitsInBuffer = 8;
+        if (!hasBits(1)) {
+            return -1; //EOF reached
         }
-        remainingBitsInBuffer -= 1;
-        return (bitBuffer >>> remainingBitsInBuffer) & 1;
+        int bit = peekBits(1);
+        skipBits(1);
+        return bit;
     }
 
     public byte readByte() throws IOException {
-        int result = 0;
-        for (int i = 7; i >= 0; i--) {
-            result |= readBit() << i;
-        }
+        int result = peekBits(8);
+        skipBits(8);
         return (byte) result;
     }
 
+    /**
+     * Returns true if at least count bits (max. 32) are left in the stream.
+     */
+    public boolean hasBits(int count) throws IOException {
+        if (bitsInBuffer < count) {
+            refill();
+        }
+        return bitsInBuffer >= count;
+    }
+
+    /**
+     * Returns the next count bits (max. 32) without consuming them, first bit is the most significant.
+     * Missing bits at the end of the stream are filled with zeros.
+     */
+    public int peekBits(int count) throws IOException {
+        if (bitsInBuffer < count) {
+            refill();
+        }
+        long bits;
+        if (bitsInBuffer >= count) {
+            bits = bitBuffer >>> (bitsInBuffer - count);
+        } else {
+            bits = bitBuffer << (count - bitsInBuffer);
+        }
+        return (int) (bits & ((1L << count) - 1));
+    }
+
+    /**
+     * Consumes count bits (max. 32). Bits beyond the end of the stream are ignored.
+     */
+    public void skipBits(int count) throws IOException {
+        if (bitsInBuffer < count) {
+            refill();
+        }
+        bitsInBuffer = Math.max(0, bitsInBuffer - count);
+    }
+
+    // fills the accumulator with as many whole bytes as fit
+    private void refill() throws IOException {
+        while (bitsInBuffer <= MAX_BUFFERED_BITS) {
+            if (bufferPosition == bufferLength && !readBuffer()) {
+                return;
+            }
+            bitBuffer = (bitBuffer << 8) | (buffer[bufferPosition++] & 0xFF);
+            bitsInBuffer += 8;
+        }
+    }
+
+    private boolean readBuffer() throws IOException {
+        if (endOfStream) {
+            return false;
+        }
+        int readBytes = inputStream.read(buffer, 0, BUFFER_SIZE);
+        while (readBytes == 0) {
+            readBytes = inputStream.read(buffer, 0, BUFFER_SIZE);
+        }
+        if (readBytes < 0) {
+            endOfStream = true;
+            return false;
+        }
+        bufferPosition = 0;
+        bufferLength = readBytes;
+        return true;
+    }
 }
@@ -3,12 +3,22 @@ package propra.imageconverter.io.codec.huffman;
 import java.io.IOException;
 import java.io.OutputStream;
 
-import static propra.imageconverter.util.Validator.ensure;
-
+/**
+ * Writes bits (most significant bit first) to an output stream.
+ * <p>
+ * Bits are collected in a 64 bit accumulator, complete bytes are moved into an internal byte array
+ * which is written to the output stream when it is full or on flush(). So a whole code is written
+ * with one call of writeBits(...) and the output stream is called once per BUFFER_SIZE bytes.
+ */
 public class BitStreamWriter {
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_BITS_PER_WRITE = 56;
+
     private final OutputStream outputStream;
-    private int bitBuffer;
-    private int bitsInBuffer;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition;
+    private long bitBuffer;
+    private int bitsInBuffer; // always < 8 between calls
 
     public BitStreamWriter(OutputStream outputStream) {
         this.outputStream = outputStream;
@@ -16,31 +26,85 @@ public class BitStreamWriter {
         this.bitsInBuffer = 0;
     }
 
-    public void writeByte(byte b) throws IOException {
-        for (int position = 7; position >= 0; position--) {
-            int currentBit = (b >> position) & 1;
-            writeBit(currentBit);
+    /**
+     * Writes the lowest length bits (max. 56) of code, the most significant of these bits first.
+     */
+    public void writeBits(long code, int length) throws IOException {
+        if (length > MAX_BITS_PER_WRITE) {
+            throw new IllegalArgumentException("[error] Too many bits for one write. Aborting.");
+        }
+        bitBuffer = (bitBuffer << length) | (code & ((1L << length) - 1));
+        bitsInBuffer += length;
+        while (bitsInBuffer >= 8) {
+            bitsInBuffer -= 8;
+            if (bufferPosition == BUFFER_SIZE) {
+                writeBuffer();
+            }
+            buffer[bufferPosition++] = (byte) (bitBuffer >>> bitsInBuffer);
         }
     }
 
-    public void flush() throws IOException {
+    /**
+     * Appends the first bitCount bits of bits (most significant bit of each byte first), e.g. a bit stream
+     * of another BitStreamWriter. If the written bits end on a byte boundary, the bytes are copied,
+     * otherwise every byte is shifted by the bit offset and merged with the pending bits.
+     */
+    public void writeBits(byte[] bits, long bitCount) throws IOException {
+        int byteCount = (int) (bitCount >>> 3);
+        int position = 0;
         if (bitsInBuffer == 0) {
-            return;
+            while (position < byteCount) {
+                if (bufferPosition == BUFFER_SIZE) {
+                    writeBuffer();
+                }
+                int length = Math.min(byteCount - position, BUFFER_SIZE - bufferPosition);
+                System.arraycopy(bits, position, buffer, bufferPosition, length);
+                bufferPosition += length;
+                position += length;
+            }
+        } else {
+            // every byte is completed by the high bits of the next byte, its low bits stay pending
+            int pendingBits = (int) bitBuffer;
+            while (position < byteCount) {
+                if (bufferPosition == BUFFER_SIZE) {
+                    writeBuffer();
+                }
+                int end = Math.min(byteCount, position + BUFFER_SIZE - bufferPosition);
+                for (; position < end; position++) {
+                    int b = bits[position] & 0xFF;
+                    buffer[bufferPosition++] = (byte) ((pendingBits << (8 - bitsInBuffer)) | (b >>> bitsInBuffer));
+                    pendingBits = b;
+                }
+            }
+            bitBuffer = pendingBits;
+        }
+        int remainingBits = (int) (bitCount & 7);
+        if (remainingBits > 0) {
+            writeBits((bits[byteCount] & 0xFF) >>> (8 - remainingBits), remainingBits);
         }
-        bitBuffer <<= (8 - bitsInBuffer);
-        outputStream.write(bitBuffer);
-        bitBuffer = 0;
-        bitsInBuffer = 0;
+    }
+
+    public void writeByte(byte b) throws IOException {
+        writeBits(b, 8);
     }
 
     public void writeBit(int bit) throws IOException {
-        ensure((bit == 1 || bit == 0), () -> new IllegalArgumentException("Bit must be 0 or 1."));
-        bitBuffer = (bitBuffer << 1) | bit;
-        bitsInBuffer++;
-        if (bitsInBuffer == 8) {
-            flush();
-        }
+        writeBits(bit, 1);
     }
 
+    /**
+     * Writes all buffered bits to the output stream, the last incomplete byte is filled with zeros.
+     * The output stream itself is not flushed.
+     */
+    public void flush() throws IOException {
+        if (bitsInBuffer > 0) {
+            writeBits(0, 8 - bitsInBuffer);
+        }
+        writeBuffer();
+    }
 
+    private void writeBuffer() throws IOException {
+        outputStream.write(buffer, 0, bufferPosition);
+        bufferPosition = 0;
+    }
 }
@@ -1,86 +1,110 @@
 package propra.imageconverter.io.codec.huffman;
 
+import propra.imageconverter.io.buffer.ByteHistogram;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
- * Class represents Huffman Codec with possibility of creation of frequency map for each character in
- * the datasegment, creation of a Huffman Tree and respective code map and offers look up methods.
+ * Class represents Huffman Codec with possibility of creation of a Huffman Tree from the frequency of
+ * each character in the datasegment and the respective code tables.
+ * <p>
+ * Codes are kept in two primitive tables indexed by the unsigned character value (code bits and code
+ * length, length 0 = character not used), so encoding a character is two array look ups and one
+ * BitStreamWriter.writeBits(...) call.
+ * <p>
+ * The codes are canonical: characters are ordered by code length and character value and get
+ * consecutive codes. The huffman tree written to the file is rebuilt from these codes.
+ * Code lengths are limited to MAX_CODE_LENGTH bits: if the tree gets deeper (only possible with
+ * extremely skewed frequencies), the frequencies are halved (keeping them at least 1) and the tree is
+ * built again.
  */
 public class HuffmanCodec {
+    public static final int MAX_CODE_LENGTH = 32;
     private static final Comparator<HuffmanNode> NODE_COMPARATOR =
-            Comparator.comparingInt(HuffmanNode::getFrequency);
-    private final Map<Byte, Integer> freqMap = new HashMap<>();
-    private final Map<Byte, String> codeMap = new HashMap<>();
-    private Queue<HuffmanNode> leafs;
+            Comparator.comparingLong(HuffmanNode::getFrequency);
+
+    private final int[] codes = new int[256];
+    private final int[] codeLengths = new int[256];
+    private int characterCount;
     private HuffmanNode root;
 
     public HuffmanCodec(InputStream inputStream) throws IOException {
-        createFreqMap(inputStream);
-        createLeafs();
-        createHuffmanTree();
-        createCodeMap(root, "");
+        this(countBytes(inputStream));
     }
 
+    /**
+     * Creates the codec from the frequency of each byte value (index = unsigned byte value).
+     */
+    public HuffmanCodec(long[] byteCounts) {
+        long[] frequencies = getFrequencies(byteCounts);
+        while (!createCodeLengths(createHuffmanTree(frequencies))) {
+            for (int i = 0; i < frequencies.length; i++) {
+                if (frequencies[i] > 0) {
+                    frequencies[i] = Math.max(1, frequencies[i] / 2);
+                }
+            }
+        }
+        createCanonicalCodes();
+        root = createCanonicalTree();
+    }
+
+    /**
+     * Creates the codec from the given tree (codes are taken from the tree as is).
+     */
     public HuffmanCodec(HuffmanNode root) {
         this.root = root;
-        createCodeMap(root, "");
+        createCodes(root, 0, 0);
     }
 
-    private void createFreqMap(InputStream inputStream) throws IOException {
-        int currentByte = inputStream.read();
-        if (currentByte == -1) {
-            throw new IllegalArgumentException("Empty data segment. Aborting");
+    private static long[] countBytes(InputStream inputStream) throws IOException {
+        long[] byteCounts = new long[256];
+        int[] tables = ByteHistogram.createTables();
+        byte[] bytes = new byte[64 * 1024];
+        int readBytes;
+        while ((readBytes = inputStream.read(bytes)) != -1) {
+            ByteHistogram.count(bytes, 0, readBytes, byteCounts, tables);
         }
+        return byteCounts;
+    }
 
-        int[] byteCounts = new int[256];
-        int index = 0;
-        while (currentByte != -1) {
-            byteCounts[Byte.toUnsignedInt((byte) currentByte)]++;
-            currentByte = inputStream.read();
-            index++;
+    /**
+     * Frequencies of the characters in the tree, a used character has a frequency > 0.
+     * A filler character (frequency 0, marked as -1) is added if only one character is used.
+     */
+    private static long[] getFrequencies(long[] byteCounts) {
+        long[] frequencies = new long[256];
+        int usedCharacters = 0;
+        for (int i = 0; i < frequencies.length; i++) {
+            frequencies[i] = byteCounts[i];
+            if (byteCounts[i] != 0) {
+                usedCharacters++;
+            }
         }
 
-        // add chars with freq > 0 to freqMap
-        index = 0;
-        while (index < byteCounts.length) {
-            if (byteCounts[index] != 0) {
-                freqMap.put((byte) index, byteCounts[index]);
-            }
-            index++;
+        if (usedCharacters == 0) {
+            throw new IllegalArgumentException("Empty data segment. Aborting");
         }
 
-        index = 0;
-        if (freqMap.size() == 1) { // add filler if only one character in data segment used to create tree
-            while (index < byteCounts.length) {
-                if (byteCounts[index] == 0) {
-                    freqMap.put((byte) index, byteCounts[index]);
+        if (usedCharacters == 1) { // add filler if only one character in data segment used to create tree
+            for (int i = 0; i < frequencies.length; i++) {
+                if (frequencies[i] == 0) {
+                    frequencies[i] = -1;
                     break;
                 }
-                index++;
             }
         }
+        return frequencies;
     }
 
-    public Map<Byte, Integer> getFreqMap() {
-        return this.freqMap;
-    }
-
-    public Queue<HuffmanNode> getLeafs() {
-        return leafs;
-    }
-
-    private void createLeafs() {
-        leafs = freqMap.entrySet().stream()
-                .map(e -> new HuffmanNode(e.getKey(), e.getValue()))
-                .sorted(NODE_COMPARATOR)
-                .collect(Collectors.toCollection(() -> new PriorityQueue<>(NODE_COMPARATOR)));
-    }
-
-    private void createHuffmanTree() {
-        Queue<HuffmanNode> huffmanNodes = new PriorityQueue<>(leafs);
+    private static HuffmanNode createHuffmanTree(long[] frequencies) {
+        Queue<HuffmanNode> huffmanNodes = new PriorityQueue<>(NODE_COMPARATOR);
+        for (int i = 0; i < frequencies.length; i++) {
+            if (frequencies[i] != 0) {
+                huffmanNodes.add(new HuffmanNode((byte) i, Math.max(0, frequencies[i])));
+            }
+        }
         while (huffmanNodes.size() > 1) {
             HuffmanNode right = huffmanNodes.remove();
             HuffmanNode left = huffmanNodes.remove();
@@ -88,16 +112,81 @@ public class HuffmanCodec {
                     right.getFrequency() + left.getFrequency());
             huffmanNodes.add(parent);
         }
-        root = huffmanNodes.remove();
+        return huffmanNodes.remove();
+    }
+
+    /**
+     * Fills the code length table from the depth of the leaves.
+     * Returns false if a code is longer than MAX_CODE_LENGTH.
+     */
+    private boolean createCodeLengths(HuffmanNode tree) {
+        Arrays.fill(codeLengths, 0);
+        characterCount = 0;
+        Deque<HuffmanNode> nodes = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        nodes.push(tree);
+        depths.push(0);
+        while (!nodes.isEmpty()) {
+            HuffmanNode node = nodes.pop();
+            int depth = depths.pop();
+            if (node.isLeaf()) {
+                if (depth > MAX_CODE_LENGTH) {
+                    return false;
+                }
+                codeLengths[Byte.toUnsignedInt(node.getCharacter())] = depth;
+                characterCount++;
+            } else {
+                nodes.push(node.getLeftChild());
+                depths.push(depth + 1);
+                nodes.push(node.getRightChild());
+                depths.push(depth + 1);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Assigns consecutive codes to the characters ordered by code length and character value.
+     */
+    private void createCanonicalCodes() {
+        long code = 0;
+        int previousLength = 0;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            for (int character = 0; character < codeLengths.length; character++) {
+                if (codeLengths[character] == length) {
+                    code <<= length - previousLength;
+                    previousLength = length;
+                    codes[character] = (int) code;
+                    code++;
+                }
+            }
+        }
+    }
+
+    // the tree matching the canonical codes (left child = 0, right child = 1)
+    private HuffmanNode createCanonicalTree() {
+        MutableNode canonicalRoot = new MutableNode();
+        for (int character = 0; character < codes.length; character++) {
+            MutableNode node = canonicalRoot;
+            for (int bit = codeLengths[character] - 1; bit >= 0; bit--) {
+                node = node.getChild((codes[character] >>> bit) & 1);
+            }
+            if (codeLengths[character] > 0) {
+                node.character = (byte) character;
+            }
+        }
+        return canonicalRoot.toHuffmanNode();
     }
 
-    private void createCodeMap(HuffmanNode node, String huffmanCode) {
+    private void createCodes(HuffmanNode node, int code, int length) {
         if (node.isLeaf()) {
-            codeMap.put(node.getCharacter(), huffmanCode);
+            codes[Byte.toUnsignedInt(node.getCharacter())] = code;
+            codeLengths[Byte.toUnsignedInt(node.getCharacter())] = length;
+            characterCount++;
             return;
         }
-        createCodeMap(node.getLeftChild(), huffmanCode + "0");
-        createCodeMap(node.getRightChild(), huffmanCode + "1");
+        createCodes(node.getLeftChild(), code << 1, length + 1);
+        createCodes(node.getRightChild(), (code << 1) | 1, length + 1);
     }
 
     public void writeHuffmanTreeToFile(BitStreamWriter huffmanWriter) throws IOException {
@@ -106,8 +195,7 @@ public class HuffmanCodec {
 
     private void writeHuffmanTreeCode(HuffmanNode node, BitStreamWriter huffmanWriter) throws IOException {
         if (node.isLeaf()) {
-            huffmanWriter.writeBit(1);
-            huffmanWriter.writeByte(node.getCharacter());
+            huffmanWriter.writeBits(0x100 | Byte.toUnsignedInt(node.getCharacter()), 9); // 1 + character
         } else {
             huffmanWriter.writeBit(0);
             writeHuffmanTreeCode(node.getLeftChild(), huffmanWriter);
@@ -115,21 +203,51 @@ public class HuffmanCodec {
         }
     }
 
-    public Map<Byte, String> getCodeMap() {
-        return codeMap;
+    /**
+     * Number of bytes of the encoded data segment (tree and codes) for the given byte frequencies.
+     */
+    public long getEncodedSize(long[] byteCounts) {
+        // tree: 1 bit per inner node, 1 + 8 bits per leaf
+        long bits = characterCount * 9L + (characterCount - 1);
+        for (int character = 0; character < codeLengths.length; character++) {
+            bits += byteCounts[character] * codeLengths[character];
+        }
+        return (bits + 7) / 8;
     }
 
-    Optional<Byte> getCharacter(String code) {
-        return codeMap.entrySet().stream().filter(c -> c.getValue().equals(code))
-                .map(Map.Entry::getKey)
-                .findFirst();
+    /**
+     * Code of each character (index = unsigned character value), the code is in the lowest bits.
+     */
+    public int[] getCodes() {
+        return codes.clone();
     }
 
-    public void writeCodeAsBits(Byte character, BitStreamWriter huffmanWriter) throws IOException {
-        String c = codeMap.get(character);
-        for (int i = 0; i < c.length(); i++) {
-            huffmanWriter.writeBit((int) c.charAt(i) - '0');
-        }
+    /**
+     * Code length of each character (index = unsigned character value), 0 if the character is not used.
+     */
+    public int[] getCodeLengths() {
+        return codeLengths.clone();
     }
 
+    /**
+     * Inner class to build the canonical tree top down, converted into HuffmanNodes when complete.
+     */
+    private static class MutableNode {
+        private final MutableNode[] children = new MutableNode[2];
+        private byte character;
+
+        MutableNode getChild(int bit) {
+            if (children[bit] == null) {
+                children[bit] = new MutableNode();
+            }
+            return children[bit];
+        }
+
+        HuffmanNode toHuffmanNode() {
+            if (children[0] == null && children[1] == null) {
+                return new HuffmanNode(character);
+            }
+            return new HuffmanNode(children[0].toHuffmanNode(), children[1].toHuffmanNode());
+        }
+    }
 }
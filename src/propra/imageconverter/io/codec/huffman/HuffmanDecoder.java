@@ -0,0 +1,81 @@
+package propra.imageconverter.io.codec.huffman;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * Lookup table decoder for huffman trees.
+ * <p>
+ * The tree is flattened into tables of 2^TABLE_BITS entries. Each table is indexed by the next
+ * TABLE_BITS bits of the stream. An entry either holds a character and the length of its code
+ * (relative to the table), or refers to a sub table for codes longer than TABLE_BITS.
+ * This way a whole character is decoded with one (or for long codes a few) table look ups
+ * instead of walking the tree bit by bit.
+ * <p>
+ * Entry layout:
+ * - leaf:      bits 0-7 character, bits 8-15 code length consumed in this table
+ * - sub table: bit 31 set, bits 0-30 offset of the sub table
+ */
+final class HuffmanDecoder {
+    private static final int TABLE_BITS = 9;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+    private static final int SUB_TABLE_FLAG = 0x80000000;
+
+    private int[] table = new int[TABLE_SIZE];
+    private int tableLength = 0;
+
+    HuffmanDecoder(HuffmanNode root) {
+        if (root.isLeaf()) {
+            // degenerated tree: a single character, each bit is read as one occurrence
+            Arrays.fill(table, (1 << 8) | Byte.toUnsignedInt(root.getCharacter()));
+            tableLength = TABLE_SIZE;
+        } else {
+            createTable(root);
+        }
+    }
+
+    private int createTable(HuffmanNode node) {
+        int offset = tableLength;
+        tableLength += TABLE_SIZE;
+        if (tableLength > table.length) {
+            table = Arrays.copyOf(table, Math.max(tableLength, table.length * 2));
+        }
+        fillTable(node, offset, 0, 0);
+        return offset;
+    }
+
+    private void fillTable(HuffmanNode node, int offset, int depth, int prefix) {
+        if (node.isLeaf()) {
+            int span = 1 << (TABLE_BITS - depth);
+            int start = offset + (prefix << (TABLE_BITS - depth));
+            Arrays.fill(table, start, start + span, (depth << 8) | Byte.toUnsignedInt(node.getCharacter()));
+        } else if (depth == TABLE_BITS) {
+            int subTableOffset = createTable(node);
+            table[offset + prefix] = SUB_TABLE_FLAG | subTableOffset;
+        } else {
+            fillTable(node.getLeftChild(), offset, depth + 1, prefix << 1);
+            fillTable(node.getRightChild(), offset, depth + 1, (prefix << 1) | 1);
+        }
+    }
+
+    /**
+     * Decodes the next character, returns -1 if the stream ends before a complete code was read.
+     */
+    int decode(BitStreamReader bitStreamReader) throws IOException {
+        int entry = table[bitStreamReader.peekBits(TABLE_BITS)];
+        while ((entry & SUB_TABLE_FLAG) != 0) {
+            if (!bitStreamReader.hasBits(TABLE_BITS)) {
+                return -1;
+            }
+            bitStreamReader.skipBits(TABLE_BITS);
+            entry = table[(entry & ~SUB_TABLE_FLAG) + bitStreamReader.peekBits(TABLE_BITS)];
+        }
+        int codeLength = entry >>> 8;
+        if (!bitStreamReader.hasBits(codeLength)) {
+            return -1;
+        }
+        bitStreamReader.skipBits(codeLength);
+        return entry & 0xFF;
+    }
+}
@@ -2,20 +2,19 @@ package propra.imageconverter.io.codec.huffman;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Optional;
 
 
 /**
  * Class for decoding propra files that are compressed with huffman according to ProPra-Spec 3.0
  */
 public class HuffmanInputStream extends InputStream {
-    public final HuffmanCodec huffmanCodec;
+    private final HuffmanDecoder huffmanDecoder;
     private final BitStreamReader huffmanFileReader;
 
     public HuffmanInputStream(InputStream huffmanFileStream) throws IOException {
         huffmanFileReader = new BitStreamReader(huffmanFileStream);
         HuffmanNode huffmanTreeRoot = readHuffmanTree(huffmanFileReader);
-        huffmanCodec = new HuffmanCodec(huffmanTreeRoot);
+        huffmanDecoder = new HuffmanDecoder(huffmanTreeRoot);
     }
 
 
@@ -36,18 +35,25 @@ public class HuffmanInputStream extends InputStream {
      */
     @Override
     public int read() throws IOException {
-        // First read bit by bit
-        // compare to codes in HashMap
-        String code = "";
-        int currentBit;
-        Optional<Byte> character;
-        while ((currentBit = huffmanFileReader.readBit()) != -1) {
-            code = code.concat(Integer.toString(currentBit));
-            character = huffmanCodec.getCharacter(code);
-            if (character.isPresent()) {
-                return Byte.toUnsignedInt(character.get());
+        return huffmanDecoder.decode(huffmanFileReader);
+    }
+
+    /**
+     * Decodes up to len characters of the data segment into the given array.
+     */
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int decoded = 0;
+        while (decoded < len) {
+            int character = huffmanDecoder.decode(huffmanFileReader);
+            if (character == -1) {
+                break;
             }
+            bytes[off + decoded++] = (byte) character;
         }
-        return -1;
+        return decoded == 0 ? -1 : decoded;
     }
 }
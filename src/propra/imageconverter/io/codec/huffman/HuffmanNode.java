@@ -9,7 +9,7 @@ import java.util.Objects;
 public class HuffmanNode {
 
     private byte character;
-    private int frequency;
+    private long frequency;
 
     private HuffmanNode leftChild;
     private HuffmanNode rightChild;
@@ -23,7 +23,7 @@ public class HuffmanNode {
         }
     }
 
-    HuffmanNode(HuffmanNode leftChild, HuffmanNode rightChild, int weight) { // inner node or root
+    HuffmanNode(HuffmanNode leftChild, HuffmanNode rightChild, long weight) { // inner node or root
         this.leftChild = leftChild;
         this.rightChild = rightChild;
         this.frequency = weight;
@@ -37,7 +37,7 @@ public class HuffmanNode {
         this.character = character;
     }
 
-    public HuffmanNode(byte character, int frequency) { // leaf node
+    public HuffmanNode(byte character, long frequency) { // leaf node
         this.character = character;
         this.frequency = frequency;
     }
@@ -46,7 +46,7 @@ public class HuffmanNode {
         return (leftChild == null && rightChild == null);
     }
 
-    int getFrequency() {
+    long getFrequency() {
         return frequency;
     }
 
@@ -0,0 +1,43 @@
+package propra.imageconverter.io.codec.huffman;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Class for encoding the data segment of propra files with huffman according to ProPra-Spec 3.0.
+ * The huffman tree is written on creation, finish() writes the remaining bits.
+ */
+public class HuffmanOutputStream extends OutputStream {
+    private final int[] codes;
+    private final int[] codeLengths;
+    private final BitStreamWriter huffmanFileWriter;
+
+    public HuffmanOutputStream(OutputStream huffmanFileStream, HuffmanCodec huffmanCodec) throws IOException {
+        this.codes = huffmanCodec.getCodes();
+        this.codeLengths = huffmanCodec.getCodeLengths();
+        this.huffmanFileWriter = new BitStreamWriter(huffmanFileStream);
+        huffmanCodec.writeHuffmanTreeToFile(huffmanFileWriter);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        int character = b & 0xFF;
+        huffmanFileWriter.writeBits(codes[character], codeLengths[character]);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            int character = bytes[i] & 0xFF;
+            huffmanFileWriter.writeBits(codes[character], codeLengths[character]);
+        }
+    }
+
+    /**
+     * Writes the last incomplete byte (filled with zeros) without closing the underlying stream.
+     */
+    public void finish() throws IOException {
+        huffmanFileWriter.flush();
+    }
+}
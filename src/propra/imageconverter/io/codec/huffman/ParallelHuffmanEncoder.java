@@ -0,0 +1,165 @@
+package propra.imageconverter.io.codec.huffman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+
+/**
+ * The ParallelHuffmanEncoder encodes a data segment with huffman in blocks on several threads.
+ * <p>
+ * The codes of the bytes only depend on the codec, not on the bytes before them, so every block is
+ * encoded into a bit buffer of its own. A block ends anywhere within a byte, so the bit buffers are
+ * appended to the data segment bit by bit in order (see BitStreamWriter.writeBits(byte[], long)).
+ * The output is identical to the output of the HuffmanOutputStream: tree, codes, last byte filled with zeros.
+ * The blocks are encoded on the pool of the caller (see WorkerPools), which is shared with other conversions.
+ */
+public class ParallelHuffmanEncoder {
+    private static final int BLOCK_SIZE = 1024 * 1024; // max. bytes of a block and of its bit buffer
+
+    /**
+     * Memory used by one encoding: per thread a block and its bit buffer. Codes may be longer than a byte
+     * (up to HuffmanCodec.MAX_CODE_LENGTH bits), so a block holds as many bytes as fit into the bit buffer
+     * with the longest code of the codec, and the bit buffer never grows.
+     */
+    public static long getWorkingMemory(int threads) {
+        return threads * 2L * BLOCK_SIZE;
+    }
+
+    /**
+     * Encodes all bytes of the input stream and writes the huffman tree and the codes to the output stream.
+     */
+    public static void encode(InputStream inputStream, OutputStream outputStream, HuffmanCodec huffmanCodec,
+                              int threads, ExecutorService pool) throws IOException {
+        BitStreamWriter bitStreamWriter = new BitStreamWriter(outputStream);
+        huffmanCodec.writeHuffmanTreeToFile(bitStreamWriter);
+
+        int maxCodeLength = Arrays.stream(huffmanCodec.getCodeLengths()).max().orElse(0);
+        int blockSize = (int) Math.min(BLOCK_SIZE, 8L * BLOCK_SIZE / Math.max(1, maxCodeLength));
+        Block[] blocks = new Block[threads];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = new Block(huffmanCodec, blockSize);
+        }
+
+        List<Future<Void>> encodedBlocks = new ArrayList<>();
+        try {
+            boolean isEndOfStream = false;
+            while (!isEndOfStream) {
+                // read the next blocks (one per thread)
+                int usedBlocks = 0;
+                while (usedBlocks < blocks.length && !isEndOfStream) {
+                    Block block = blocks[usedBlocks];
+                    block.length = readBlock(inputStream, block.bytes);
+                    isEndOfStream = block.length < block.bytes.length;
+                    if (block.length > 0) {
+                        usedBlocks++;
+                    }
+                }
+
+                // encode the blocks in parallel
+                encodedBlocks.clear();
+                for (int i = 0; i < usedBlocks; i++) {
+                    encodedBlocks.add(pool.submit(blocks[i]));
+                }
+
+                // append the bits of the blocks in order
+                for (int i = 0; i < usedBlocks; i++) {
+                    await(encodedBlocks.get(i));
+                    bitStreamWriter.writeBits(blocks[i].bitBuffer.getBytes(), blocks[i].bitCount);
+                    blocks[i].bitBuffer.reset();
+                }
+            }
+        } finally {
+            // the pool is shared, so the blocks still encoding after a failure are cancelled, not the pool
+            for (Future<Void> encodedBlock : encodedBlocks) {
+                encodedBlock.cancel(false);
+            }
+        }
+        bitStreamWriter.flush();
+    }
+
+    // reads until the block is full, returns the number of bytes read (less at the end of the stream)
+    private static int readBlock(InputStream inputStream, byte[] bytes) throws IOException {
+        int length = 0;
+        while (length < bytes.length) {
+            int readBytes = inputStream.read(bytes, length, bytes.length - length);
+            if (readBytes < 0) {
+                break;
+            }
+            length += readBytes;
+        }
+        return length;
+    }
+
+    private static void await(Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("[error] Conversion was interrupted. Aborting.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * A block of uncompressed bytes and the bits of their codes.
+     */
+    private static class Block implements Callable<Void> {
+        private final int[] codes;
+        private final int[] codeLengths;
+        private final byte[] bytes;
+        private final BitBuffer bitBuffer = new BitBuffer();
+        private int length;
+        private long bitCount;
+
+        Block(HuffmanCodec huffmanCodec, int blockSize) {
+            this.codes = huffmanCodec.getCodes();
+            this.codeLengths = huffmanCodec.getCodeLengths();
+            this.bytes = new byte[blockSize];
+        }
+
+        @Override
+        public Void call() throws IOException {
+            BitStreamWriter bitStreamWriter = new BitStreamWriter(bitBuffer);
+            long blockBitCount = 0;
+            for (int i = 0; i < length; i++) {
+                int character = bytes[i] & 0xFF;
+                bitStreamWriter.writeBits(codes[character], codeLengths[character]);
+                blockBitCount += codeLengths[character];
+            }
+            // the zeros of the last incomplete byte are not appended
+            bitStreamWriter.flush();
+            bitCount = blockBitCount;
+            return null;
+        }
+    }
+
+    /**
+     * Buffer of encoded bits (BLOCK_SIZE bytes, enough for the codes of a block), read without copying them.
+     */
+    private static class BitBuffer extends ByteArrayOutputStream {
+        BitBuffer() {
+            super(BLOCK_SIZE);
+        }
+
+        byte[] getBytes() {
+            return buf;
+        }
+    }
+}
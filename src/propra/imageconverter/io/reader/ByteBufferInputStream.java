@@ -0,0 +1,49 @@
+package propra.imageconverter.io.reader;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream reading the remaining bytes of a ByteBuffer (e.g. an image received in memory).
+ * The stream reads a duplicate of the buffer, position and limit of the given buffer are not changed.
+ */
+public class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+    }
+
+    @Override
+    public int read() {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        return Byte.toUnsignedInt(buffer.get());
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int length = Math.min(len, buffer.remaining());
+        buffer.get(bytes, off, length);
+        return length;
+    }
+
+    @Override
+    public long skip(long n) {
+        int length = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + length);
+        return length;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
@@ -0,0 +1,89 @@
+package propra.imageconverter.io.reader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Input stream reading a file through memory mapped windows.
+ * Bulk reads copy directly from the mapped buffer, there is no intermediate read buffer.
+ */
+public class MappedInputStream extends InputStream {
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private final FileChannel fileChannel;
+    private final long fileSize;
+    private MappedByteBuffer window;
+    private long windowPosition;
+
+    public MappedInputStream(Path path) throws IOException {
+        this.fileChannel = FileChannel.open(path, READ);
+        this.fileSize = fileChannel.size();
+        this.windowPosition = 0;
+        this.window = map(0);
+    }
+
+    private MappedByteBuffer map(long position) throws IOException {
+        return fileChannel.map(FileChannel.MapMode.READ_ONLY, position,
+                Math.min(WINDOW_SIZE, fileSize - position));
+    }
+
+    // returns false if the end of the file is reached
+    private boolean nextWindowIfEmpty() throws IOException {
+        if (window.hasRemaining()) {
+            return true;
+        }
+        if (windowPosition + window.capacity() >= fileSize) {
+            return false;
+        }
+        windowPosition += window.capacity();
+        window = map(windowPosition);
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextWindowIfEmpty()) {
+            return -1;
+        }
+        return Byte.toUnsignedInt(window.get());
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextWindowIfEmpty()) {
+            return -1;
+        }
+        int length = Math.min(len, window.remaining());
+        window.get(bytes, off, length);
+        return length;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && nextWindowIfEmpty()) {
+            int length = (int) Math.min(n - skipped, window.remaining());
+            window.position(window.position() + length);
+            skipped += length;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, fileSize - windowPosition - window.position());
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+}
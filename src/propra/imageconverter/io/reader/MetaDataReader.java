@@ -6,5 +6,19 @@ import java.io.IOException;
 import java.io.InputStream;
 
 public interface MetaDataReader {
-    MetaData readMetaData(InputStream inputStream, String inputPath) throws IOException;
+    MetaData readMetaData(InputStream inputStream) throws IOException;
+
+    // returns the stream the data segment is read from (e.g. to verify a checksum while reading)
+    default InputStream getDataSegmentInputStream(InputStream inputStream) {
+        return inputStream;
+    }
+
+    // called after the data segment was read to verify it
+    default void readOnEnd() throws IOException {
+    }
+
+    // true if readOnEnd verifies the data segment, so an output converted from it is only valid afterwards
+    default boolean isVerifiedOnEnd() {
+        return false;
+    }
 }
@@ -1,44 +1,67 @@
 package propra.imageconverter.io.reader.image;
 
-import propra.imageconverter.image.ColorSequence;
 import propra.imageconverter.image.MetaData;
 import propra.imageconverter.image.Packet;
-import propra.imageconverter.image.Pixel;
 import propra.imageconverter.io.codec.huffman.HuffmanInputStream;
 import propra.imageconverter.io.writer.ImageWriter;
 
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PushbackInputStream;
-import java.util.ArrayList;
-import java.util.List;
+
+import static propra.imageconverter.image.ColorSequence.BYTES_PER_PIXEL;
 
 
 /**
  * The DataSegmentReader-Class reads data from the inputStream,
  * and in case it receives uncompressed data,
  * compresses the data by creating Rle- and Raw-Packets.
+ * Uncompressed data is read scanLine by scanLine into a buffer, the packets are
+ * determined by scanning this buffer.
  * Packets are handed to the packetWriter.
  */
 public class DataSegmentReader {
-    private static final int BYTES_PER_PIXEL = 3; // 24 bits per pixel
+    // buffers around the reader (buffered streams, transcoder blocks, bit streams of huffman, ...)
+    private static final long STREAM_BUFFER_MEMORY = 1024 * 1024;
+
+    /**
+     * Memory used by one conversion through this reader: the scanLine buffer, the scanLine splitter
+     * and the stream buffers. It does not depend on the height of the image.
+     */
+    public static long getWorkingMemory(MetaData metaData, RleStrategy rleStrategy) {
+        return STREAM_BUFFER_MEMORY + (long) metaData.getImageWidth() * BYTES_PER_PIXEL
+                + rleStrategy.getWorkingMemory(metaData.getImageWidth());
+    }
 
     public static void read(MetaData metaData, InputStream inputStream,
                             ImageWriter.PacketWriter packetWriter) throws IOException {
+        read(metaData, inputStream, packetWriter, RleStrategy.GREEDY);
+    }
+
+    /**
+     * Reads the data segment, uncompressed scanLines are split into packets by the rleStrategy.
+     * Packets of rle compressed data are passed on as they are (GREEDY) or its scanLines are split
+     * into new packets as well (OPTIMAL).
+     */
+    public static void read(MetaData metaData, InputStream inputStream,
+                            ImageWriter.PacketWriter packetWriter, RleStrategy rleStrategy) throws IOException {
 
         switch (metaData.getCompressionType()) {
 
             case RLE:
-                readRleCompressedData(metaData, inputStream, packetWriter);
+                if (rleStrategy == RleStrategy.GREEDY) {
+                    readRleCompressedData(metaData, inputStream, packetWriter);
+                } else { // data gets uncompressed by RleInputStream read() method
+                    readUncompressedData(metaData, new RleInputStream(inputStream), packetWriter, rleStrategy);
+                }
                 break;
 
             case UNCOMPRESSED:
-                readUncompressedData(metaData, inputStream, packetWriter);
+                readUncompressedData(metaData, inputStream, packetWriter, rleStrategy);
                 break;
 
             case HUFFMAN: // data gets uncompressed by HuffmanInputStream read() method
-                readUncompressedData(metaData, new HuffmanInputStream(inputStream), packetWriter);
+                readUncompressedData(metaData, new HuffmanInputStream(inputStream), packetWriter, rleStrategy);
                 break;
 
             default:
@@ -48,162 +71,147 @@ public class DataSegmentReader {
     }
 
     private static void readUncompressedData(MetaData metaData, InputStream inputStream,
-                                             ImageWriter.PacketWriter packetWriter) throws IOException {
+                                             ImageWriter.PacketWriter packetWriter,
+                                             RleStrategy rleStrategy) throws IOException {
         int scanLineLength = metaData.getImageWidth();
         int numberOfScanLines = metaData.getImageHeight();
-        PushbackInputStream pushbackInputStream = new PushbackInputStream(inputStream,
-                2 * metaData.getBitsPerPixel() / 8);
+
+        // pixels of the current scanLine, read with one call per scanLine.
+        // Packets reference ranges of this buffer, so no pixel objects need to be created.
+        byte[] scanLine = new byte[scanLineLength * BYTES_PER_PIXEL];
+        Packet rlePacket = Packet.createRlePacket(metaData.getColorSequence());
+        Packet rawPacket = Packet.createRawPacket(metaData.getColorSequence());
+        RleStrategy.ScanLineSplitter splitter = rleStrategy.createSplitter(scanLineLength);
 
         // traverse through all scanLines in image
         for (int lineID = 0; lineID < numberOfScanLines; lineID++) {
-            int pixelsReadInThisScanLine = 0;
-
-            while (pixelsReadInThisScanLine < scanLineLength) {
-
-                // only look for Rle packets if there are at least two
-                // pixels left on this line
-                if (pixelsReadInThisScanLine < scanLineLength - 1) {
-                    Packet rlePacket = readRlePacket(pushbackInputStream,
-                            (scanLineLength - pixelsReadInThisScanLine),
-                            metaData.getColorSequence());
-                    if (rlePacket != null) {
-                        pixelsReadInThisScanLine += rlePacket.getUncompressedPixelCount();
-                        packetWriter.writePacket(rlePacket);
-
-                        // We do not know why the Rle packet stopped
-                        // accepting new pixels. The following reasons come to
-                        // mind:
-                        // * The Rle packet is full, but new repeated pixels are still in this line.
-                        // * The packet is followed by other repeated pixels.
-                        // * The packet is followed by other unrepeated pixels.
-                        // * There are no pixels left on this scanline.
-                        // In all of the above cases, starting a new Rle packet
-                        // is preferable, if at all possible. We can achieve
-                        // this trivially with a new iteration of the loop.
-                        // If a new Rle packet is not possible, we will
-                        // fallback to the Raw packet.
-                        continue;
-                    }
-                }
+            readFully(inputStream, scanLine, scanLine.length);
+            splitter.writeScanLinePackets(scanLine, 0, scanLineLength, rlePacket, rawPacket, packetWriter);
+        }
+    }
 
-                Packet rawPacket = readRawPacket(pushbackInputStream,
-                        (scanLineLength - pixelsReadInThisScanLine),
-                        metaData.getColorSequence());
-                packetWriter.writePacket(rawPacket);
-                pixelsReadInThisScanLine += rawPacket.getUncompressedPixelCount();
+    /**
+     * Splits the pixels of one scanLine (starting at scanLineOffset of the array) into Rle and
+     * Raw packets (packets never cross scanLine boundaries) and hands them to the packetWriter.
+     * Every run of at least two pixels becomes a Rle packet (RleStrategy.GREEDY).
+     */
+    static void writeScanLinePackets(byte[] scanLine, int scanLineOffset, int scanLineLength,
+                                     Packet rlePacket, Packet rawPacket,
+                                     ImageWriter.PacketWriter packetWriter) throws IOException {
+        int pixelsReadInThisScanLine = 0;
+
+        while (pixelsReadInThisScanLine < scanLineLength) {
+            int repetitionCount = countRepetitions(scanLine, scanLineOffset, pixelsReadInThisScanLine,
+                    scanLineLength);
+            if (repetitionCount > 1) {
+                packetWriter.writePacket(rlePacket.wrap(scanLine,
+                        scanLineOffset + pixelsReadInThisScanLine * BYTES_PER_PIXEL, repetitionCount));
+                pixelsReadInThisScanLine += repetitionCount;
+
+                // We do not know why the Rle packet stopped
+                // accepting new pixels. The following reasons come to
+                // mind:
+                // * The Rle packet is full, but new repeated pixels are still in this line.
+                // * The packet is followed by other repeated pixels.
+                // * The packet is followed by other unrepeated pixels.
+                // * There are no pixels left on this scanline.
+                // In all of the above cases, starting a new Rle packet
+                // is preferable, if at all possible. We can achieve
+                // this trivially with a new iteration of the loop.
+                // If a new Rle packet is not possible, we will
+                // fallback to the Raw packet.
+                continue;
             }
+
+            int pixelCount = countRawPixels(scanLine, scanLineOffset, pixelsReadInThisScanLine,
+                    scanLineLength);
+            packetWriter.writePacket(rawPacket.wrap(scanLine,
+                    scanLineOffset + pixelsReadInThisScanLine * BYTES_PER_PIXEL, pixelCount));
+            pixelsReadInThisScanLine += pixelCount;
         }
     }
 
     private static void readRleCompressedData(MetaData metaData, InputStream inputStream,
                                               ImageWriter.PacketWriter packetWriter) throws IOException {
+        byte[] pixels = new byte[Packet.MAX_PIXEL_COUNT * BYTES_PER_PIXEL];
+        Packet rlePacket = Packet.createRlePacket(metaData.getColorSequence());
+        Packet rawPacket = Packet.createRawPacket(metaData.getColorSequence());
+
         int currentByte;
         long readPixels = 0;
-        final long expectedPixels = metaData.getImageHeight() * metaData.getImageWidth();
+        final long expectedPixels = (long) metaData.getImageHeight() * metaData.getImageWidth();
         while ((currentByte = inputStream.read()) != -1 && readPixels < expectedPixels) {
             int packetTypeIndicator = currentByte & 0x80;
             int sizeField = (currentByte & 0x7F) + 1;
 
-            if (packetTypeIndicator > 0) { // Is Rle Packet, create RlePackets
-                Pixel referencePixel = readPixel(inputStream, metaData.getColorSequence());
-                packetWriter.writePacket(Packet.createRlePacket(sizeField, referencePixel));
-                readPixels += sizeField;
-            } else { // create RawPackets
-                Pixel[] pixels = new Pixel[sizeField];
-                readPixels += sizeField;
-                for (int i = 0; i < pixels.length; i++) {
-                    pixels[i] = readPixel(inputStream, metaData.getColorSequence());
-                }
-                packetWriter.writePacket(Packet.createRawPacket(pixels));
+            if (packetTypeIndicator > 0) { // Is Rle Packet, reference pixel is read once
+                readFully(inputStream, pixels, BYTES_PER_PIXEL);
+                packetWriter.writePacket(rlePacket.wrap(pixels, 0, sizeField));
+            } else { // Raw Packet
+                readFully(inputStream, pixels, sizeField * BYTES_PER_PIXEL);
+                packetWriter.writePacket(rawPacket.wrap(pixels, 0, sizeField));
             }
+            readPixels += sizeField;
         }
     }
 
-    private static Packet readRawPacket(PushbackInputStream pushbackInputStream,
-                                        long remainingPixelsInThisLine,
-                                        ColorSequence colorSequence) throws IOException {
-        List<Pixel> pixels = new ArrayList<>();
-        Pixel currentPixel = readPixel(pushbackInputStream, colorSequence);
-        pixels.add(currentPixel);
-        remainingPixelsInThisLine--;
-
-        while (remainingPixelsInThisLine > 0) {
-            Pixel nextPixel = readPixel(pushbackInputStream, colorSequence);
-            if (nextPixel.equals(currentPixel)) {
+    /**
+     * Returns the number of pixels of a Raw packet starting at pixel index start of the scanLine.
+     */
+    private static int countRawPixels(byte[] scanLine, int scanLineOffset, int start, int scanLineLength) {
+        int pixelCount = 1;
+
+        while (start + pixelCount < scanLineLength) {
+            int next = start + pixelCount;
+            if (isSamePixel(scanLine, scanLineOffset, next, next - 1)) {
                 // We started a new Raw Packet, but we noticed that the next pixel has the same
                 // value as the current one.
-                // We need to stop the process of creating a Raw Packet, unread the current and
-                // next Pixel, so a Rle Packet may be started and can process those pixels.
-                pixels.remove(pixels.size() - 1);
-                unreadPixel(pushbackInputStream, nextPixel, colorSequence);
-                unreadPixel(pushbackInputStream, currentPixel, colorSequence);
+                // We need to stop the Raw Packet before the current pixel, so a Rle Packet may be
+                // started and can process those pixels.
+                pixelCount--;
                 break;
             }
             // in case the (actual) pixel count is >= 128, we need to finish the packet.
-            // because we already have read the next pixel (which would be pixel 129), we need to
-            // unread it and make sure it will be included in the next packet.
-            if (pixels.size() >= 128) {
-                unreadPixel(pushbackInputStream, nextPixel, colorSequence);
+            // The next pixel will be included in the next packet.
+            if (pixelCount >= Packet.MAX_PIXEL_COUNT) {
                 break;
             }
-            pixels.add(nextPixel);
-            currentPixel = nextPixel;
-            remainingPixelsInThisLine--;
+            pixelCount++;
         }
 
-        return Packet.createRawPacket(pixels.toArray(new Pixel[0]));
+        return pixelCount;
     }
 
-    private static Packet readRlePacket(PushbackInputStream pushbackInputStream,
-                                        long remainingPixelsInThisLine,
-                                        ColorSequence colorSequence) throws IOException {
-        Pixel referencePixel = readPixel(pushbackInputStream, colorSequence);
-        remainingPixelsInThisLine--;
-
+    /**
+     * Returns the repetition count of the pixel at index start of the scanLine
+     * (1 if the next pixel differs).
+     */
+    private static int countRepetitions(byte[] scanLine, int scanLineOffset, int start, int scanLineLength) {
         int repetitionCount = 1;
-
-        Pixel nextPixel = readPixel(pushbackInputStream, colorSequence);
-        remainingPixelsInThisLine--;
-
-        // case: rep < 2
-        if (!referencePixel.equals(nextPixel)) {
-            unreadPixel(pushbackInputStream, nextPixel, colorSequence);
-            unreadPixel(pushbackInputStream, referencePixel, colorSequence);
-            return null;
-        }
-
-        repetitionCount++;
-
-        while (remainingPixelsInThisLine > 0
-                && repetitionCount < 128) {
-            nextPixel = readPixel(pushbackInputStream, colorSequence);
-            remainingPixelsInThisLine--;
-            if (!nextPixel.equals(referencePixel)) {
-                unreadPixel(pushbackInputStream, nextPixel, colorSequence);
-                break;
-            } else {
-                repetitionCount++;
-            }
+        while (start + repetitionCount < scanLineLength
+                && repetitionCount < Packet.MAX_PIXEL_COUNT
+                && isSamePixel(scanLine, scanLineOffset, start + repetitionCount, start)) {
+            repetitionCount++;
         }
-        return Packet.createRlePacket(repetitionCount, referencePixel);
+        return repetitionCount;
     }
 
-    // transforms bytes into pixels and sets color sequence according to input format
-    private static Pixel readPixel(InputStream inputStream,
-                                   ColorSequence colorSequence) throws IOException {
-        byte[] pixel = new byte[BYTES_PER_PIXEL];
-        for (int i = 0; i < BYTES_PER_PIXEL; i++) {
-            int value = inputStream.read();
-            if (value < 0) {
+    static void readFully(InputStream inputStream, byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int readBytes = inputStream.read(bytes, offset, length - offset);
+            if (readBytes < 0) {
                 throw new EOFException("[error] Unexpected end-of-file. Aborting.");
             }
-            pixel[i] = (byte) value;
+            offset += readBytes;
         }
-        return colorSequence.fromByteArray(pixel);
     }
 
-    private static void unreadPixel(PushbackInputStream pushbackInputStream, Pixel pixel,
-                                    ColorSequence colorSequence) throws IOException {
-        pushbackInputStream.unread(colorSequence.formatAsByteArray(pixel));
+    static boolean isSamePixel(byte[] scanLine, int scanLineOffset, int pixelIndex, int otherPixelIndex) {
+        int a = scanLineOffset + pixelIndex * BYTES_PER_PIXEL;
+        int b = scanLineOffset + otherPixelIndex * BYTES_PER_PIXEL;
+        return scanLine[a] == scanLine[b]
+                && scanLine[a + 1] == scanLine[b + 1]
+                && scanLine[a + 2] == scanLine[b + 2];
     }
 }
@@ -0,0 +1,94 @@
+package propra.imageconverter.io.reader.image;
+
+import propra.imageconverter.image.Packet;
+import propra.imageconverter.io.writer.ImageWriter;
+
+import java.io.IOException;
+
+import static propra.imageconverter.image.ColorSequence.BYTES_PER_PIXEL;
+
+
+/**
+ * The OptimalScanLineSplitter splits a scanLine into the Rle and Raw packets with the smallest
+ * number of bytes (a Rle packet takes 1 + 3 bytes, a Raw packet of n pixels 1 + 3 * n bytes).
+ * <p>
+ * A dynamic program determines from the end of the scanLine to its start the smallest number of bytes
+ * of the remaining pixels (bytes[i] for the pixels from index i on):
+ * - Rle packet: 4 + bytes[i + r] with the run length r (at least 2, at most 128) starting at i.
+ * A shorter Rle packet is never better, as bytes[] does not increase with i.
+ * - Raw packet: min over 1 <= n <= 128 of 1 + 3 * n + bytes[i + n], found with a sliding window
+ * minimum of bytes[j] + 3 * j, so every pixel is processed in constant time.
+ * <p>
+ * The greedy splitting of the DataSegmentReader is optimal in most cases. It loses single bytes
+ * e.g. when the remainder of a run longer than 128 pixels starts its own Raw packet instead of
+ * ending the previous one.
+ */
+class OptimalScanLineSplitter implements RleStrategy.ScanLineSplitter {
+    private static final int RLE_PACKET_BYTES = 1 + BYTES_PER_PIXEL;
+
+    // per pixel index: smallest number of bytes of the remaining pixels and length of the first packet
+    // (positive: Rle packet, negative: Raw packet)
+    private final int[] bytes;
+    private final int[] packetLengths;
+    // pixel indices of the sliding window minimum, in window[head..tail)
+    private final int[] window;
+
+    OptimalScanLineSplitter(int scanLineLength) {
+        this.bytes = new int[scanLineLength + 1];
+        this.packetLengths = new int[scanLineLength];
+        this.window = new int[scanLineLength + 1];
+    }
+
+    static long getWorkingMemory(int scanLineLength) {
+        return 3L * Integer.BYTES * (scanLineLength + 1);
+    }
+
+    @Override
+    public void writeScanLinePackets(byte[] scanLine, int scanLineOffset, int scanLineLength,
+                                     Packet rlePacket, Packet rawPacket,
+                                     ImageWriter.PacketWriter packetWriter) throws IOException {
+        bytes[scanLineLength] = 0;
+        int head = scanLineLength;
+        int tail = scanLineLength;
+        int runLength = 0;
+
+        for (int i = scanLineLength - 1; i >= 0; i--) {
+            // window of the Raw packets starting at i: next pixel index i + 1 ... i + 128
+            int value = bytes[i + 1] + BYTES_PER_PIXEL * (i + 1);
+            while (head < tail && bytes[window[head]] + BYTES_PER_PIXEL * window[head] >= value) {
+                head++;
+            }
+            window[--head] = i + 1;
+            if (window[tail - 1] > i + Packet.MAX_PIXEL_COUNT) {
+                tail--;
+            }
+            int end = window[tail - 1];
+            int rawBytes = 1 + BYTES_PER_PIXEL * (end - i) + bytes[end];
+
+            boolean isRepeated = i + 1 < scanLineLength
+                    && DataSegmentReader.isSamePixel(scanLine, scanLineOffset, i, i + 1);
+            runLength = isRepeated ? Math.min(runLength + 1, Packet.MAX_PIXEL_COUNT) : 1;
+            int rleBytes = runLength > 1 ? RLE_PACKET_BYTES + bytes[i + runLength] : Integer.MAX_VALUE;
+
+            if (rleBytes <= rawBytes) {
+                bytes[i] = rleBytes;
+                packetLengths[i] = runLength;
+            } else {
+                bytes[i] = rawBytes;
+                packetLengths[i] = -(end - i);
+            }
+        }
+
+        int i = 0;
+        while (i < scanLineLength) {
+            int offset = scanLineOffset + i * BYTES_PER_PIXEL;
+            if (packetLengths[i] > 0) {
+                packetWriter.writePacket(rlePacket.wrap(scanLine, offset, packetLengths[i]));
+                i += packetLengths[i];
+            } else {
+                packetWriter.writePacket(rawPacket.wrap(scanLine, offset, -packetLengths[i]));
+                i -= packetLengths[i];
+            }
+        }
+    }
+}
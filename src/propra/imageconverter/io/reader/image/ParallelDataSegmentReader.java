@@ -0,0 +1,173 @@
+package propra.imageconverter.io.reader.image;
+
+import propra.imageconverter.image.MetaData;
+import propra.imageconverter.image.Packet;
+import propra.imageconverter.io.codec.huffman.HuffmanInputStream;
+import propra.imageconverter.io.writer.ImageWriter;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static propra.imageconverter.image.ColorSequence.BYTES_PER_PIXEL;
+
+
+/**
+ * The ParallelDataSegmentReader-Class reads uncompressed data in bands of scanLines
+ * and creates the packets of several bands in parallel.
+ * <p>
+ * This is possible because packets never cross scanLine boundaries. Each band is handed to its
+ * own PacketWriter writing into a buffer of the band. The buffers are written to the data segment
+ * in order, so the output is identical to the output of the DataSegmentReader.
+ * Rle compressed data is passed on to the DataSegmentReader.
+ * <p>
+ * The PacketWriters of the imageWriter must not depend on each other (not usable for huffman,
+ * see ParallelHuffmanEncoder).
+ * <p>
+ * The bands are encoded on the pool of the caller (see WorkerPools), which is shared with other conversions.
+ */
+public class ParallelDataSegmentReader {
+    private static final int BAND_SIZE = 1024 * 1024; // bytes of uncompressed scanLines per band
+
+    /**
+     * Memory used by one conversion through this reader: per thread the scanLines of a band and the
+     * buffer of its packets (which may grow to twice the size of the band) and its scanLine splitter.
+     */
+    public static long getWorkingMemory(MetaData metaData, int threads, RleStrategy rleStrategy) {
+        int scanLineBytes = metaData.getImageWidth() * BYTES_PER_PIXEL;
+        long bandBytes = (long) Math.max(1, BAND_SIZE / scanLineBytes) * scanLineBytes;
+        return DataSegmentReader.getWorkingMemory(metaData, rleStrategy)
+                + threads * (3 * bandBytes + rleStrategy.getWorkingMemory(metaData.getImageWidth()));
+    }
+
+    public static void read(MetaData metaData, InputStream inputStream, ImageWriter imageWriter,
+                            OutputStream dataSegmentOutputStream, int threads,
+                            RleStrategy rleStrategy, ExecutorService pool) throws IOException {
+
+        switch (metaData.getCompressionType()) {
+
+            case UNCOMPRESSED:
+                readUncompressedData(metaData, inputStream, imageWriter, dataSegmentOutputStream, threads,
+                        rleStrategy, pool);
+                break;
+
+            case HUFFMAN: // data gets uncompressed by HuffmanInputStream read() method
+                readUncompressedData(metaData, new HuffmanInputStream(inputStream), imageWriter,
+                        dataSegmentOutputStream, threads, rleStrategy, pool);
+                break;
+
+            case RLE:
+                if (rleStrategy != RleStrategy.GREEDY) { // data gets uncompressed by RleInputStream read() method
+                    readUncompressedData(metaData, new RleInputStream(inputStream), imageWriter,
+                            dataSegmentOutputStream, threads, rleStrategy, pool);
+                } else { // rle packets are passed on as they are
+                    DataSegmentReader.read(metaData, inputStream,
+                            imageWriter.getPacketWriter(dataSegmentOutputStream));
+                }
+                break;
+
+            default:
+                throw new IllegalArgumentException("[error] Unsupported " + "compression type. Aborting.");
+        }
+    }
+
+    private static void readUncompressedData(MetaData metaData, InputStream inputStream,
+                                             ImageWriter imageWriter, OutputStream dataSegmentOutputStream,
+                                             int threads, RleStrategy rleStrategy,
+                                             ExecutorService pool) throws IOException {
+        int scanLineBytes = metaData.getImageWidth() * BYTES_PER_PIXEL;
+        int scanLinesPerBand = Math.max(1, BAND_SIZE / scanLineBytes);
+
+        Band[] bands = new Band[threads];
+        for (int i = 0; i < bands.length; i++) {
+            bands[i] = new Band(metaData, scanLinesPerBand, imageWriter, rleStrategy);
+        }
+
+        List<Future<Void>> encodedBands = new ArrayList<>();
+        try {
+            int remainingScanLines = metaData.getImageHeight();
+            while (remainingScanLines > 0) {
+                // read the next bands (one per thread)
+                int usedBands = 0;
+                while (usedBands < bands.length && remainingScanLines > 0) {
+                    Band band = bands[usedBands++];
+                    band.scanLineCount = Math.min(scanLinesPerBand, remainingScanLines);
+                    DataSegmentReader.readFully(inputStream, band.scanLines, band.scanLineCount * scanLineBytes);
+                    remainingScanLines -= band.scanLineCount;
+                }
+
+                // create the packets of the bands in parallel
+                encodedBands.clear();
+                for (int i = 0; i < usedBands; i++) {
+                    encodedBands.add(pool.submit(bands[i]));
+                }
+
+                // write the bands in order
+                for (int i = 0; i < usedBands; i++) {
+                    await(encodedBands.get(i));
+                    bands[i].output.writeTo(dataSegmentOutputStream);
+                    bands[i].output.reset();
+                }
+            }
+        } finally {
+            // the pool is shared, so the bands still encoding after a failure are cancelled, not the pool
+            for (Future<Void> encodedBand : encodedBands) {
+                encodedBand.cancel(false);
+            }
+        }
+    }
+
+    private static void await(Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("[error] Conversion was interrupted. Aborting.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * A band of scanLines together with everything needed to create its packets.
+     */
+    private static class Band implements Callable<Void> {
+        private final int scanLineLength;
+        private final byte[] scanLines;
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private final Packet rlePacket;
+        private final Packet rawPacket;
+        private final ImageWriter.PacketWriter packetWriter;
+        private final RleStrategy.ScanLineSplitter splitter;
+        private int scanLineCount;
+
+        Band(MetaData metaData, int scanLinesPerBand, ImageWriter imageWriter,
+             RleStrategy rleStrategy) throws IOException {
+            this.scanLineLength = metaData.getImageWidth();
+            this.scanLines = new byte[scanLinesPerBand * scanLineLength * BYTES_PER_PIXEL];
+            this.rlePacket = Packet.createRlePacket(metaData.getColorSequence());
+            this.rawPacket = Packet.createRawPacket(metaData.getColorSequence());
+            this.packetWriter = imageWriter.getPacketWriter(output);
+            this.splitter = rleStrategy.createSplitter(scanLineLength);
+        }
+
+        @Override
+        public Void call() throws IOException {
+            for (int i = 0; i < scanLineCount; i++) {
+                splitter.writeScanLinePackets(scanLines, i * scanLineLength * BYTES_PER_PIXEL,
+                        scanLineLength, rlePacket, rawPacket, packetWriter);
+            }
+            return null;
+        }
+    }
+}
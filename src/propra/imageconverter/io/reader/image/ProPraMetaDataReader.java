@@ -6,13 +6,12 @@ import propra.imageconverter.image.MetaData;
 import propra.imageconverter.io.exceptions.UnsupportedFormatException;
 import propra.imageconverter.io.reader.MetaDataReader;
 import propra.imageconverter.util.Checksum;
+import propra.imageconverter.util.ChecksumInputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.Arrays;
 
 import static propra.imageconverter.image.ColorSequence.GBR;
@@ -27,9 +26,12 @@ public class ProPraMetaDataReader implements MetaDataReader {
     private static final short HEADER_SIZE = 28;
     private static final ColorSequence colorSequence = GBR;
     private CompressionType compressionType;
+    private long dataSegmentSize;
+    private int checkSum;
+    private ChecksumInputStream dataSegmentInputStream;
 
     @Override
-    public MetaData readMetaData(InputStream inputStream, String inputPath) throws IOException {
+    public MetaData readMetaData(InputStream inputStream) throws IOException {
         byte[] metaData = new byte[HEADER_SIZE];
 
         for (int i = 0; i < HEADER_SIZE; i++) {
@@ -64,8 +66,8 @@ public class ProPraMetaDataReader implements MetaDataReader {
                 () -> new UnsupportedFormatException("[error] File contains unsupported compression. " +
                         "Please use --help to view usage."));
 
-        long dataSegmentSize = header.getLong();
-        int checkSum = header.getInt();
+        dataSegmentSize = header.getLong();
+        checkSum = header.getInt();
 
         switch (compression) {
             case 0:
@@ -82,16 +84,38 @@ public class ProPraMetaDataReader implements MetaDataReader {
                 break;
         }
 
-        if (compressionType == CompressionType.UNCOMPRESSED) {
-            ensure(Files.size(Paths.get(inputPath)) == dataSegmentSize + HEADER_SIZE, () ->
-                    new UnsupportedFormatException("[error] Unexpected file size. Aborting."));
+        return new MetaData(compressionType, width, height, bitsPerPixel, colorSequence);
+    }
 
-            ensure(checkSum == Checksum.calculateChecksum(inputPath, HEADER_SIZE, dataSegmentSize),
-                    () -> new UnsupportedFormatException(
-                            "[error] Unexpected " + "checksum in source file. Aborting.")
-            );
+    @Override
+    public InputStream getDataSegmentInputStream(InputStream inputStream) {
+        if (compressionType != CompressionType.UNCOMPRESSED) {
+            return inputStream;
         }
-        return new MetaData(compressionType, width, height, bitsPerPixel, colorSequence);
+        // size and checksum are verified while the data segment is read
+        dataSegmentInputStream = new ChecksumInputStream(inputStream);
+        return dataSegmentInputStream;
+    }
+
+    @Override
+    public void readOnEnd() throws IOException {
+        if (dataSegmentInputStream == null) {
+            return;
+        }
+        Checksum checksum = dataSegmentInputStream.getChecksum();
+        ensure(checksum.getCount() == dataSegmentSize && dataSegmentInputStream.read() == -1, () ->
+                new UnsupportedFormatException("[error] Unexpected file size. Aborting."));
+
+        ensure(checkSum == checksum.getValue(),
+                () -> new UnsupportedFormatException(
+                        "[error] Unexpected " + "checksum in source file. Aborting.")
+        );
+    }
+
+    @Override
+    public boolean isVerifiedOnEnd() {
+        // size and checksum of an uncompressed data segment (see getDataSegmentInputStream)
+        return compressionType == CompressionType.UNCOMPRESSED;
     }
 
 }
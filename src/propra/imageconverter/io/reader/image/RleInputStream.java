@@ -0,0 +1,72 @@
+package propra.imageconverter.io.reader.image;
+
+import propra.imageconverter.image.Packet;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static propra.imageconverter.image.ColorSequence.BYTES_PER_PIXEL;
+
+
+/**
+ * Input stream decoding a rle compressed data segment into its uncompressed pixels.
+ * <p>
+ * It is used when the packets of a rle source are not passed on, but its scanLines are split into
+ * new packets (RleStrategy.OPTIMAL). The end of the stream is reached at the end of a packet.
+ */
+class RleInputStream extends InputStream {
+    private final InputStream rleInputStream;
+    private final byte[] pixels = new byte[Packet.MAX_PIXEL_COUNT * BYTES_PER_PIXEL];
+    // uncompressed bytes of the current packet in pixels[0..length), next byte at position
+    private int length;
+    private int position;
+
+    RleInputStream(InputStream rleInputStream) {
+        this.rleInputStream = rleInputStream;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextPacketIfEmpty()) {
+            return -1;
+        }
+        return Byte.toUnsignedInt(pixels[position++]);
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextPacketIfEmpty()) {
+            return -1;
+        }
+        int readBytes = Math.min(len, length - position);
+        System.arraycopy(pixels, position, bytes, off, readBytes);
+        position += readBytes;
+        return readBytes;
+    }
+
+    // returns false if the data segment ends before the next packet
+    private boolean nextPacketIfEmpty() throws IOException {
+        if (position < length) {
+            return true;
+        }
+        int header = rleInputStream.read();
+        if (header == -1) {
+            return false;
+        }
+        int pixelCount = (header & 0x7F) + 1;
+        if ((header & 0x80) != 0) { // Rle packet, the pixel is read once and repeated
+            DataSegmentReader.readFully(rleInputStream, pixels, BYTES_PER_PIXEL);
+            for (int i = BYTES_PER_PIXEL; i < pixelCount * BYTES_PER_PIXEL; i++) {
+                pixels[i] = pixels[i - BYTES_PER_PIXEL];
+            }
+        } else { // Raw packet
+            DataSegmentReader.readFully(rleInputStream, pixels, pixelCount * BYTES_PER_PIXEL);
+        }
+        length = pixelCount * BYTES_PER_PIXEL;
+        position = 0;
+        return true;
+    }
+}
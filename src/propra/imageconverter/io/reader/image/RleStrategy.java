@@ -0,0 +1,64 @@
+package propra.imageconverter.io.reader.image;
+
+import propra.imageconverter.image.Packet;
+import propra.imageconverter.io.writer.ImageWriter;
+
+import java.io.IOException;
+
+
+/**
+ * RleStrategy (enum) class:
+ * Consists of the two ways a scanLine is split into Rle and Raw packets:
+ * - GREEDY: every run of at least two pixels becomes a Rle packet (fast, the default)
+ * - OPTIMAL: the packets with the smallest number of bytes, determined by a dynamic program per
+ * scanLine (see OptimalScanLineSplitter)
+ * <p>
+ * The implementations are included directly with the respective strategy.
+ * This may be described as a weak form of Strategy Pattern.
+ */
+public enum RleStrategy {
+    GREEDY {
+        @Override
+        ScanLineSplitter createSplitter(int scanLineLength) {
+            return DataSegmentReader::writeScanLinePackets;
+        }
+
+        @Override
+        public long getWorkingMemory(int scanLineLength) {
+            return 0;
+        }
+    },
+
+    OPTIMAL {
+        @Override
+        ScanLineSplitter createSplitter(int scanLineLength) {
+            return new OptimalScanLineSplitter(scanLineLength);
+        }
+
+        @Override
+        public long getWorkingMemory(int scanLineLength) {
+            return OptimalScanLineSplitter.getWorkingMemory(scanLineLength);
+        }
+    };
+
+    /**
+     * Returns a splitter for scanLines of the given length (in pixels), to be used by one thread.
+     */
+    abstract ScanLineSplitter createSplitter(int scanLineLength);
+
+    /**
+     * Memory used by one splitter in addition to the scanLine buffer.
+     */
+    public abstract long getWorkingMemory(int scanLineLength);
+
+    /**
+     * Splits the pixels of one scanLine (starting at scanLineOffset of the array) into Rle and
+     * Raw packets (packets never cross scanLine boundaries) and hands them to the packetWriter.
+     */
+    @FunctionalInterface
+    interface ScanLineSplitter {
+        void writeScanLinePackets(byte[] scanLine, int scanLineOffset, int scanLineLength,
+                                  Packet rlePacket, Packet rawPacket,
+                                  ImageWriter.PacketWriter packetWriter) throws IOException;
+    }
+}
@@ -0,0 +1,88 @@
+package propra.imageconverter.io.reader.image;
+
+import propra.imageconverter.image.ColorSequence;
+import propra.imageconverter.image.MetaData;
+import propra.imageconverter.image.Packet;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static propra.imageconverter.image.ColorSequence.BYTES_PER_PIXEL;
+
+
+/**
+ * The RleTranscoder-Class converts a rle compressed data segment into a rle compressed data segment
+ * of another color sequence (or the same one) without creating packets.
+ * <p>
+ * The data segment is read in blocks into a buffer. Packet headers are kept as they are, only the
+ * pixels of the packets are converted to the target color sequence in place. Everything up to the
+ * last complete packet of the buffer is written with one call, the incomplete packet at the end of the
+ * buffer is moved to the beginning before the buffer is filled again.
+ * <p>
+ * Packets are passed on unchanged, so the output is identical to the output of the DataSegmentReader
+ * with rle packets written by a rle PacketWriter.
+ */
+public class RleTranscoder {
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int MAX_PACKET_SIZE = 1 + Packet.MAX_PIXEL_COUNT * BYTES_PER_PIXEL;
+
+    public static void transcode(MetaData metaData, InputStream inputStream, OutputStream outputStream,
+                                 ColorSequence targetColorSequence) throws IOException {
+        ColorSequence sourceColorSequence = metaData.getColorSequence();
+        byte[] buffer = new byte[BLOCK_SIZE + MAX_PACKET_SIZE];
+        int bufferLength = 0;
+        int position = 0;
+
+        long readPixels = 0;
+        final long expectedPixels = (long) metaData.getImageHeight() * metaData.getImageWidth();
+        boolean endOfStream = false;
+        while (readPixels < expectedPixels) {
+            // read more data if the next packet is not complete in the buffer
+            int packetSize = getPacketSize(buffer, position, bufferLength);
+            if (packetSize == 0 || position + packetSize > bufferLength) {
+                if (endOfStream) {
+                    if (position == bufferLength) {
+                        break; // data segment ends without an incomplete packet
+                    }
+                    throw new EOFException("[error] Unexpected end-of-file. Aborting.");
+                }
+                outputStream.write(buffer, 0, position);
+                System.arraycopy(buffer, position, buffer, 0, bufferLength - position);
+                bufferLength -= position;
+                position = 0;
+
+                int readBytes = inputStream.read(buffer, bufferLength, BLOCK_SIZE);
+                if (readBytes < 0) {
+                    endOfStream = true;
+                } else {
+                    bufferLength += readBytes;
+                }
+                continue;
+            }
+
+            int header = buffer[position] & 0xFF;
+            int pixelCount = (header & 0x7F) + 1;
+            sourceColorSequence.convert(buffer, position + 1, targetColorSequence,
+                    (packetSize - 1) / BYTES_PER_PIXEL);
+            position += packetSize;
+            readPixels += pixelCount;
+        }
+        outputStream.write(buffer, 0, position);
+    }
+
+    /**
+     * Size of the packet starting at position (header and pixels), 0 if the header is not in the buffer.
+     */
+    private static int getPacketSize(byte[] buffer, int position, int bufferLength) {
+        if (position >= bufferLength) {
+            return 0;
+        }
+        int header = buffer[position] & 0xFF;
+        if ((header & 0x80) != 0) { // Rle packet, the pixel is stored once
+            return 1 + BYTES_PER_PIXEL;
+        }
+        return 1 + ((header & 0x7F) + 1) * BYTES_PER_PIXEL; // Raw packet
+    }
+}
@@ -21,7 +21,7 @@ public class TgaMetaDataReader implements MetaDataReader {
 
     @SuppressWarnings("unused")
     @Override
-    public MetaData readMetaData(InputStream inputStream, String inputPath) throws IOException {
+    public MetaData readMetaData(InputStream inputStream) throws IOException {
         byte[] metaData = new byte[HEADER_SIZE];
 
         for (int i = 0; i < HEADER_SIZE; i++) {
@@ -58,8 +58,8 @@ public class TgaMetaDataReader implements MetaDataReader {
         int lengthColorMapEntry = header.get();
 
         // Image Specs
-        int xCoordinate = header.getShort();
-        int yCoordinate = header.getShort();
+        int xCoordinate = Short.toUnsignedInt(header.getShort());
+        int yCoordinate = Short.toUnsignedInt(header.getShort());
         ensure(xCoordinate == 0 || yCoordinate != 0,
                 () -> new UnsupportedFormatException("[error] File contains inconsistent dimensions. Aborting.")
         );
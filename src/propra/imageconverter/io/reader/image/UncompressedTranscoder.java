@@ -0,0 +1,42 @@
+package propra.imageconverter.io.reader.image;
+
+import propra.imageconverter.image.ColorSequence;
+import propra.imageconverter.image.CompressionType;
+import propra.imageconverter.image.MetaData;
+import propra.imageconverter.io.codec.huffman.HuffmanInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static propra.imageconverter.image.ColorSequence.BYTES_PER_PIXEL;
+
+
+/**
+ * The UncompressedTranscoder-Class converts an uncompressed (or huffman compressed) data segment into
+ * an uncompressed data segment of another color sequence (or the same one) without creating packets.
+ * <p>
+ * The pixels are read in blocks of whole pixels, converted to the target color sequence in place
+ * and written with one call per block.
+ */
+public class UncompressedTranscoder {
+    private static final int BLOCK_SIZE = 64 * 1024 * BYTES_PER_PIXEL;
+
+    public static void transcode(MetaData metaData, InputStream inputStream, OutputStream outputStream,
+                                 ColorSequence targetColorSequence) throws IOException {
+        if (metaData.getCompressionType() == CompressionType.HUFFMAN) {
+            inputStream = new HuffmanInputStream(inputStream);
+        }
+        ColorSequence sourceColorSequence = metaData.getColorSequence();
+        long remainingBytes = (long) metaData.getImageHeight() * metaData.getImageWidth() * BYTES_PER_PIXEL;
+        byte[] buffer = new byte[(int) Math.min(BLOCK_SIZE, remainingBytes)];
+
+        while (remainingBytes > 0) {
+            int blockLength = (int) Math.min(buffer.length, remainingBytes);
+            DataSegmentReader.readFully(inputStream, buffer, blockLength);
+            sourceColorSequence.convert(buffer, 0, targetColorSequence, blockLength / BYTES_PER_PIXEL);
+            outputStream.write(buffer, 0, blockLength);
+            remainingBytes -= blockLength;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package propra.imageconverter.io.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static propra.imageconverter.util.Validator.ensure;
+
+/**
+ * ImageOutput writing into a growable buffer in memory (e.g. to return a converted image to a caller).
+ * <p>
+ * The buffer starts with the expected size of the output (bounded by the caller, the size in the header of
+ * an input is not trusted) and its capacity is doubled when it is full. Replacing the header is a direct
+ * array write. The output may not exceed the memory limit (part of --max-memory) and the max. size of
+ * a Java array (about 2 GiB).
+ */
+public class ByteBufferImageOutput implements ImageOutput {
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private final long memoryLimit;
+    private byte[] bytes;
+    private int size;
+    private final OutputStream outputStream = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            ensureCapacity(1);
+            bytes[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] source, int off, int len) throws IOException {
+            ensureCapacity(len);
+            System.arraycopy(source, off, bytes, size, len);
+            size += len;
+        }
+    };
+
+    // sizeEstimate: expected size of the output in bytes or 0 if unknown, memoryLimit: max. size of the output
+    public ByteBufferImageOutput(long sizeEstimate, long memoryLimit) {
+        this.memoryLimit = Math.min(memoryLimit, MAX_CAPACITY);
+        this.bytes = new byte[(int) Math.min(sizeEstimate > 0 ? sizeEstimate : DEFAULT_CAPACITY, this.memoryLimit)];
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        ensure(length <= memoryLimit - size, () -> new IOException("[error] Output image exceeds the " +
+                "memory budget of an in-memory conversion (" + (memoryLimit + 1023) / 1024 +
+                " KiB, see --max-memory). Aborting."));
+        if (size + length > bytes.length) {
+            int capacity = (int) Math.min(Math.max(2L * bytes.length, (long) size + length), memoryLimit);
+            bytes = Arrays.copyOf(bytes, capacity);
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public void writeAt(long position, byte[] replacement) {
+        ensure(position >= 0 && position + replacement.length <= size, () ->
+                new IllegalStateException("[error] Replaced bytes were not written yet. Aborting."));
+        System.arraycopy(replacement, 0, bytes, (int) position, replacement.length);
+    }
+
+    /**
+     * Returns the written bytes (without copying them, if the buffer is filled completely).
+     */
+    public byte[] toByteArray() {
+        return size == bytes.length ? bytes : Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * Returns a buffer over the written bytes (position 0, limit = number of bytes written).
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(bytes, 0, size).slice();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,41 @@
+package propra.imageconverter.io.writer;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * ImageOutput writing to a file with a buffered stream. Already written bytes are replaced
+ * by a positional write on the channel of the file.
+ */
+public class FileImageOutput implements ImageOutput {
+    private final FileOutputStream fileOutputStream;
+    private final OutputStream outputStream;
+
+    public FileImageOutput(Path path) throws IOException {
+        this.fileOutputStream = new FileOutputStream(path.toFile());
+        this.outputStream = new BufferedOutputStream(fileOutputStream);
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public void writeAt(long position, byte[] bytes) throws IOException {
+        outputStream.flush();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            fileOutputStream.getChannel().write(buffer, position + buffer.position());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        outputStream.close();
+    }
+}
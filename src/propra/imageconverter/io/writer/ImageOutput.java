@@ -0,0 +1,16 @@
+package propra.imageconverter.io.writer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An ImageOutput is the target an image is written to. Besides the sequential output stream it allows
+ * to replace bytes that were already written (e.g. the header placeholder of propra files).
+ */
+public interface ImageOutput extends Closeable {
+    OutputStream getOutputStream();
+
+    // replaces already written bytes starting at position
+    void writeAt(long position, byte[] bytes) throws IOException;
+}
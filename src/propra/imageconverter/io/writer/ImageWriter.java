@@ -1,5 +1,7 @@
 package propra.imageconverter.io.writer;
 
+import propra.imageconverter.image.ColorSequence;
+import propra.imageconverter.image.CompressionType;
 import propra.imageconverter.image.MetaData;
 import propra.imageconverter.image.Packet;
 
@@ -13,11 +15,23 @@ import java.io.OutputStream;
  * of PacketWriters, which may be accessed via the getPacketWriter method.
  */
 public interface ImageWriter {
-    void writeOnInit(MetaData metaDataInput, OutputStream outputStream) throws IOException;
+    // writes the header (or a header placeholder) and returns the stream the data segment is written to
+    OutputStream writeOnInit(MetaData metaDataInput, OutputStream outputStream) throws IOException;
 
     PacketWriter getPacketWriter(OutputStream outputStream) throws IOException;
 
-    void writeOnEnd(MetaData metaDataInput, String outputPath, OutputStream outputStream) throws IOException;
+    void writeOnEnd(MetaData metaDataInput, ImageOutput imageOutput) throws IOException;
+
+    // true if writeOnEnd replaces bytes that were written before (the output must be seekable or held back)
+    boolean isHeaderWrittenOnEnd();
+
+    // size of the output in bytes if it is known in advance (uncompressed), otherwise 0
+    long estimateOutputSize(MetaData metaDataInput);
+
+    // compression type and color sequence of the written data segment
+    CompressionType getCompressionType();
+
+    ColorSequence getColorSequence();
 
     // Packets are handed from the DataSegmentReader to the respective Writer.
     // This way the DataSegmentReader does not need further information on the Writer.
@@ -3,17 +3,15 @@ package propra.imageconverter.io.writer;
 import propra.imageconverter.image.ColorSequence;
 import propra.imageconverter.image.CompressionType;
 import propra.imageconverter.image.MetaData;
-import propra.imageconverter.io.codec.huffman.BitStreamWriter;
 import propra.imageconverter.io.codec.huffman.HuffmanCodec;
+import propra.imageconverter.io.codec.huffman.HuffmanOutputStream;
 import propra.imageconverter.util.Checksum;
+import propra.imageconverter.util.ChecksumOutputStream;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 
 
 /**
@@ -25,7 +23,8 @@ class ProPraImageWriter implements ImageWriter {
 
     private final CompressionType compressionType;
     private final HuffmanCodec huffmanCodec;
-    private BitStreamWriter huffmanEncoding;
+    private HuffmanOutputStream huffmanEncoding;
+    private ChecksumOutputStream dataSegmentOutputStream;
 
     ProPraImageWriter(CompressionType compressionType, HuffmanCodec huffmancodec) {
         this.compressionType = compressionType;
@@ -33,25 +32,23 @@ class ProPraImageWriter implements ImageWriter {
     }
 
     @Override
-    public void writeOnInit(MetaData metaDataInput,
-                            OutputStream outputStream) throws IOException {
+    public OutputStream writeOnInit(MetaData metaDataInput,
+                                    OutputStream outputStream) throws IOException {
         // write placeholder zeros for header
         for (int i = 0; i < HEADER_SIZE; i++) {
             outputStream.write(0);
         }
+        // size and checksum of the data segment are calculated while it is written
+        dataSegmentOutputStream = new ChecksumOutputStream(outputStream);
+        return dataSegmentOutputStream;
     }
 
     public PacketWriter getPacketWriter(OutputStream outputStream) throws IOException {
         // special case huffman
         if (compressionType.equals(CompressionType.HUFFMAN)) {
-            huffmanEncoding = new BitStreamWriter(outputStream);
-            huffmanCodec.writeHuffmanTreeToFile(huffmanEncoding);
-            return packet -> { // encode each packet to huffman
-                byte[] bytes = packet.getAsUncompressedByteArray(ColorSequence.GBR);
-                for (byte b : bytes) {
-                    huffmanCodec.writeCodeAsBits(b, huffmanEncoding);
-                }
-            };
+            huffmanEncoding = new HuffmanOutputStream(outputStream, huffmanCodec);
+            return packet -> // encode each packet to huffman
+                    packet.writeToUncompressedOutputStream(huffmanEncoding, ColorSequence.GBR);
         } else { // all other compression types
             return packet ->
                     compressionType.writeToOutputStream(outputStream, ColorSequence.GBR, packet);
@@ -59,11 +56,9 @@ class ProPraImageWriter implements ImageWriter {
     }
 
     @Override
-    public void writeOnEnd(MetaData metaDataInput, String outputPath,
-                           OutputStream outputStream) throws IOException {
+    public void writeOnEnd(MetaData metaDataInput, ImageOutput imageOutput) throws IOException {
         if (huffmanEncoding != null)
-            huffmanEncoding.flush();
-        outputStream.close();
+            huffmanEncoding.finish();
 
         ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
 
@@ -86,16 +81,36 @@ class ProPraImageWriter implements ImageWriter {
                 throw new IllegalArgumentException("Unsupported Compression. Aborting.");
         }
 
-        long dataSegmentSize = Files.size(Paths.get(outputPath)) - HEADER_SIZE;
-        header.putLong(dataSegmentSize); // data segment size
-        header.putInt(Checksum.calculateChecksum( // checksum
-                outputPath, HEADER_SIZE, dataSegmentSize
-        ));
+        Checksum checksum = dataSegmentOutputStream.getChecksum();
+        header.putLong(checksum.getCount()); // data segment size
+        header.putInt(checksum.getValue()); // checksum
 
         header.flip();
 
-        try (RandomAccessFile file = new RandomAccessFile(outputPath, "rw")) {
-            file.write(header.array()); // replace placeholder with actual header
+        imageOutput.writeAt(0, header.array()); // replace placeholder with actual header
+    }
+
+    @Override
+    public boolean isHeaderWrittenOnEnd() {
+        return true;
+    }
+
+    @Override
+    public CompressionType getCompressionType() {
+        return compressionType;
+    }
+
+    @Override
+    public ColorSequence getColorSequence() {
+        return ColorSequence.GBR;
+    }
+
+    @Override
+    public long estimateOutputSize(MetaData metaDataInput) {
+        if (compressionType != CompressionType.UNCOMPRESSED) {
+            return 0;
         }
+        return HEADER_SIZE + (long) metaDataInput.getImageWidth() * metaDataInput.getImageHeight()
+                * metaDataInput.getBitsPerPixel() / 8;
     }
 }
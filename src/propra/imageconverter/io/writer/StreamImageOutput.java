@@ -0,0 +1,108 @@
+package propra.imageconverter.io.writer;
+
+import propra.imageconverter.io.buffer.DataSegmentBuffer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static propra.imageconverter.util.Validator.ensure;
+
+/**
+ * ImageOutput writing to a stream that cannot be repositioned (e.g. the standard output in a pipe).
+ * <p>
+ * If the header is written on end (propra: size and checksum of the data segment) or the input is only
+ * verified on its end, the output is held back: the header bytes in memory, the data segment in a
+ * DataSegmentBuffer (up to the memory limit in memory, the rest in a temporary file). commit() writes the final
+ * header and the held back bytes to the stream, discard() drops them, so the stream gets no output of a
+ * failed conversion.
+ * Otherwise (tga) the bytes pass through to the stream while they are written.
+ */
+public class StreamImageOutput implements ImageOutput {
+    // bytes at the start of the output, which may be replaced (enough for the headers of all formats)
+    private static final int HEADER_CAPACITY = 64;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream stream;
+    private final OutputStream outputStream;
+    private final byte[] header;
+    private final DataSegmentBuffer body;
+    private long size;
+
+    public StreamImageOutput(OutputStream stream, boolean isHeldBack, long memoryLimit) {
+        this.stream = stream;
+        if (!isHeldBack) {
+            this.header = null;
+            this.body = null;
+            this.outputStream = new BufferedOutputStream(stream, STREAM_BUFFER_SIZE);
+            return;
+        }
+        this.header = new byte[HEADER_CAPACITY];
+        this.body = new DataSegmentBuffer(memoryLimit);
+        this.outputStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int off, int len) throws IOException {
+                if (size < HEADER_CAPACITY) {
+                    int length = (int) Math.min(len, HEADER_CAPACITY - size);
+                    System.arraycopy(bytes, off, header, (int) size, length);
+                    size += length;
+                    off += length;
+                    len -= length;
+                }
+                body.write(bytes, off, len);
+                size += len;
+            }
+        };
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public void writeAt(long position, byte[] bytes) {
+        ensure(header != null && position >= 0 && position + bytes.length <= Math.min(size, HEADER_CAPACITY), () ->
+                new IllegalStateException("[error] Only the header of a held back output can be replaced. Aborting."));
+        System.arraycopy(bytes, 0, header, (int) position, bytes.length);
+    }
+
+    /**
+     * Writes the held back output to the stream, called after the conversion succeeded.
+     */
+    public void commit() throws IOException {
+        if (header != null) {
+            stream.write(header, 0, (int) Math.min(size, HEADER_CAPACITY));
+            try (InputStream bodyInputStream = body.openInputStream()) {
+                byte[] bytes = new byte[STREAM_BUFFER_SIZE];
+                int readBytes;
+                while ((readBytes = bodyInputStream.read(bytes)) >= 0) {
+                    stream.write(bytes, 0, readBytes);
+                }
+            }
+            body.close();
+        }
+        stream.flush();
+    }
+
+    /**
+     * Drops the held back output (and its temporary file) after a failed conversion.
+     */
+    public void discard() throws IOException {
+        if (body != null) {
+            body.close();
+        }
+    }
+
+    // the stream itself is not closed (e.g. the standard output)
+    @Override
+    public void close() throws IOException {
+        outputStream.flush();
+    }
+}
@@ -22,8 +22,8 @@ class TgaImageWriter implements ImageWriter {
     }
 
     @Override
-    public void writeOnInit(MetaData metaDataInput,
-                            OutputStream outputStream) throws IOException {
+    public OutputStream writeOnInit(MetaData metaDataInput,
+                                    OutputStream outputStream) throws IOException {
 
         ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
 
@@ -55,6 +55,7 @@ class TgaImageWriter implements ImageWriter {
         header.flip();
 
         outputStream.write(header.array());
+        return outputStream;
     }
 
     @Override
@@ -63,8 +64,32 @@ class TgaImageWriter implements ImageWriter {
     }
 
     @Override
-    public void writeOnEnd(MetaData metaDataInput, String outputPath, OutputStream outputStream) {
+    public void writeOnEnd(MetaData metaDataInput, ImageOutput imageOutput) {
         // this method is empty because all meta data information for tga is available before
         // the data segment is written (e.g. no checksum calculation necessary).
     }
+
+    @Override
+    public boolean isHeaderWrittenOnEnd() {
+        return false;
+    }
+
+    @Override
+    public CompressionType getCompressionType() {
+        return compressionType;
+    }
+
+    @Override
+    public ColorSequence getColorSequence() {
+        return ColorSequence.BGR;
+    }
+
+    @Override
+    public long estimateOutputSize(MetaData metaDataInput) {
+        if (compressionType != CompressionType.UNCOMPRESSED) {
+            return 0;
+        }
+        return HEADER_SIZE + (long) metaDataInput.getImageWidth() * metaDataInput.getImageHeight()
+                * metaDataInput.getBitsPerPixel() / 8;
+    }
 }
@@ -1,52 +1,66 @@
 package propra.imageconverter.util;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-
+/**
+ * Calculates the Checksum in accordance with the ProPraSpecs 2.0.
+ * Variables are named to mirror the naming in the Spec.
+ * <p>
+ * Description of the Algorithm:
+ * <p>
+ * Checksum = A_n*2^16 + B_n
+ * A_n = sum(i + data[i]) mod X, for all i element {1, 2, ..., n}
+ * B_0 = 1
+ * B_i = (B_i-1 + A_i) mod X, for all i element {1, 2, ..., n}
+ * <p>
+ * X = 65513, n = number of bytes in data segment
+ * <p>
+ * The checksum is calculated incrementally: bytes are added with update(...) while they are
+ * written or read, so no extra pass over the data segment is needed.
+ */
 public class Checksum {
+    private static final int X = 65513;
+    // number of bytes summed up before reduction, small enough to avoid overflow of A_sum and B_i
+    private static final int BLOCK_SIZE = 16 * 1024;
 
-    /**
-     * Calculates the Checksum in accordance with the ProPraSpecs 2.0.
-     * Variables are named to mirror the naming in the Spec.
-     * <p>
-     * Description of the Algorithm:
-     * <p>
-     * Checksum = A_n*2^16 + B_n
-     * A_n = sum(i + data[i]) mod X, for all i element {1, 2, ..., n}
-     * B_0 = 1
-     * B_i = (B_i-1 + A_i) mod X, for all i element {1, 2, ..., n}
-     * <p>
-     * X = 65513, n = number of bytes in data segment
-     */
-    @SuppressWarnings("ResultOfMethodCallIgnored")
-    public static int calculateChecksum(String path, int headerSize, long dataSegmentSize) throws IOException {
-        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(path))) {
-            inputStream.skip(headerSize); // go to data segment
+    private long A_sum = 0;
+    private long B_i = 1;
+    private long n = 0;
 
-            int X = 65513;
-            int A_n;
-            int A_sum = 0;
-            int A_i;
-            int B_i_1;
-            int B_i = 1;
-            int B_n;
+    public void update(int b) {
+        n++;
+        A_sum = (A_sum + n % X + (b & 0xFF)) % X;
+        B_i = (B_i + A_sum) % X;
+    }
 
-            for (int i = 1; i <= dataSegmentSize; i++) {
-                byte b = (byte) inputStream.read();
-                A_i = (i + Byte.toUnsignedInt(b));
-                A_sum = (A_sum + A_i) % X; // reduction in every step to avoid integer overflow
-                B_i_1 = B_i;
-                B_i = (B_i_1 + A_sum) % X;
+    public void update(byte[] bytes, int off, int len) {
+        while (len > 0) {
+            int blockLength = Math.min(len, BLOCK_SIZE);
+            long i_0 = n % X; // i of the first byte in this block is n + 1
+            long A = A_sum;
+            long B = B_i;
+            for (int k = 0; k < blockLength; k++) {
+                A += i_0 + k + 1 + (bytes[off + k] & 0xFF);
+                B += A;
             }
-
-            A_n = A_sum;
-            B_n = B_i;
-
-            return (A_n * (int) Math.pow(2, 16) + B_n);
+            // reduction once per block
+            A_sum = A % X;
+            B_i = B % X;
+            n += blockLength;
+            off += blockLength;
+            len -= blockLength;
         }
     }
 
+    /**
+     * Number of bytes added to the checksum.
+     */
+    public long getCount() {
+        return n;
+    }
+
+    public int getValue() {
+        long A_n = A_sum;
+        long B_n = B_i;
+        return (int) (A_n * (1 << 16) + B_n);
+    }
 
 }
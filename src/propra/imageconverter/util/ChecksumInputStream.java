@@ -0,0 +1,58 @@
+package propra.imageconverter.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that updates a ProPra checksum with every byte read.
+ */
+public class ChecksumInputStream extends FilterInputStream {
+    private final Checksum checksum = new Checksum();
+
+    public ChecksumInputStream(InputStream inputStream) {
+        super(inputStream);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            checksum.update(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+        int readBytes = in.read(bytes, off, len);
+        if (readBytes > 0) {
+            checksum.update(bytes, off, readBytes);
+        }
+        return readBytes;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // skipped bytes would be missing in the checksum
+        byte[] skipBuffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int readBytes = read(skipBuffer, 0, (int) Math.min(n - skipped, skipBuffer.length));
+            if (readBytes < 0) {
+                break;
+            }
+            skipped += readBytes;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    public Checksum getChecksum() {
+        return checksum;
+    }
+}
@@ -0,0 +1,32 @@
+package propra.imageconverter.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that updates a ProPra checksum with every byte written.
+ */
+public class ChecksumOutputStream extends FilterOutputStream {
+    private final Checksum checksum = new Checksum();
+
+    public ChecksumOutputStream(OutputStream outputStream) {
+        super(outputStream);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        checksum.update(b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        out.write(bytes, off, len);
+        checksum.update(bytes, off, len);
+    }
+
+    public Checksum getChecksum() {
+        return checksum;
+    }
+}
@@ -1,10 +1,14 @@
 package propra.imageconverter.util;
 
 import propra.imageconverter.image.CompressionType;
+import propra.imageconverter.io.IoBackend;
+import propra.imageconverter.io.buffer.DataSegmentBuffer;
+import propra.imageconverter.io.reader.image.RleStrategy;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Locale;
 import java.util.stream.Stream;
 
 import static propra.imageconverter.util.Validator.ensure;
@@ -60,6 +64,110 @@ public final class CliHelper {
                 .substring("--output=".length());
     }
 
+    public static boolean isStandardStream(String path) {
+        return path.equals("-");
+    }
+
+    /**
+     * Image format of the input or output (formatOption "--input-format=" or "--output-format="):
+     * the value of the option if given, otherwise the file extension of the path.
+     * The standard streams (path "-") have no file extension, the option is needed.
+     */
+    public static String getImageFormat(String[] args, String path, String formatOption) {
+        long count = Arrays.stream(args).filter(arg -> arg.startsWith(formatOption)).count();
+        ensure(count <= 1,
+                () -> new IllegalArgumentException("[error] Unexpected use of options. " +
+                        "Please use --help to view usage.")
+        );
+        String format = Arrays.stream(args)
+                .filter(arg -> arg.startsWith(formatOption))
+                .findAny()
+                .map(arg -> arg.substring(formatOption.length()))
+                .orElse(null);
+        if (format == null) {
+            ensure(!isStandardStream(path),
+                    () -> new IllegalArgumentException("[error] Missing " + formatOption + "<tga|propra> " +
+                            "for standard input/output. Please use --help to view usage."));
+            return getFileExtension(path);
+        }
+        ensure(format.equals("tga") || format.equals("propra"),
+                () -> new IllegalArgumentException("[error] Image format not supported. " +
+                        "Please use --help to view usage."));
+        return format;
+    }
+
+    public static boolean hasPipelineOption(String[] args) {
+        return Arrays.asList(args).contains("--pipeline");
+    }
+
+    public static boolean hasDaemonOption(String[] args) {
+        return Arrays.stream(args).anyMatch(arg -> arg.startsWith("--daemon="));
+    }
+
+    /**
+     * Localhost TCP port of the option (e.g. "--daemon=" or "--port="), 0 = any free port.
+     */
+    public static int getPort(String[] args, String portOption) {
+        long count = Arrays.stream(args).filter(arg -> arg.startsWith(portOption)).count();
+        ensure(count == 1,
+                () -> new IllegalArgumentException("[error] Unexpected use of options. " +
+                        "Please use --help to view usage.")
+        );
+        String port = Arrays.stream(args)
+                .filter(arg -> arg.startsWith(portOption))
+                .findAny()
+                .orElseThrow(() -> new IllegalArgumentException("[error] Missing port parameter. " +
+                        "Please use --help to view usage."))
+                .substring(portOption.length());
+        try {
+            int portNumber = Integer.parseInt(port);
+            ensure(portNumber >= 0 && portNumber <= 65535,
+                    () -> new IllegalArgumentException("[error] Port must be between 0 and 65535. " +
+                            "Please use --help to view usage."));
+            return portNumber;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("[error] Invalid port. " +
+                    "Please use --help to view usage.");
+        }
+    }
+
+    public static boolean hasBatchOption(String[] args) {
+        return Arrays.stream(args).anyMatch(arg -> arg.startsWith("--batch="));
+    }
+
+    public static String getBatchPath(String[] args) {
+        long count = Arrays.stream(args).filter(arg -> arg.startsWith("--batch=")).count();
+        ensure(count == 1,
+                () -> new IllegalArgumentException("[error] Unexpected use of options. " +
+                        "Please use --help to view usage.")
+        );
+
+        return Arrays.stream(args)
+                .filter(arg -> arg.startsWith("--batch="))
+                .findAny()
+                .orElseThrow(() -> new IllegalArgumentException("[error] Missing batch parameter. " +
+                        "Please use --help to view usage."))
+                .substring("--batch=".length());
+    }
+
+    public static String getOutputFormat(String[] args) {
+        long count = Arrays.stream(args).filter(arg -> arg.startsWith("--format=")).count();
+        ensure(count == 1,
+                () -> new IllegalArgumentException("[error] Unexpected use of options. " +
+                        "Please use --help to view usage.")
+        );
+        String outputFormat = Arrays.stream(args)
+                .filter(arg -> arg.startsWith("--format="))
+                .findAny()
+                .orElseThrow(() -> new IllegalArgumentException("[error] Missing format parameter. " +
+                        "Please use --help to view usage."))
+                .substring("--format=".length());
+        ensure(outputFormat.equals("tga") || outputFormat.equals("propra"),
+                () -> new IllegalArgumentException("[error] Image format not supported. " +
+                        "Please use --help to view usage."));
+        return outputFormat;
+    }
+
     private static String getFileName(String path) {
         return new File(path).getName();
     }
@@ -131,6 +239,128 @@ public final class CliHelper {
         }
     }
 
+    public static IoBackend getIoBackend(String[] args) {
+        long count = Arrays.stream(args).filter(arg -> arg.startsWith("--io=")).count();
+        ensure(count <= 1,
+                () -> new IllegalArgumentException("[error] Unexpected use of options. " +
+                        "Please use --help to view usage.")
+        );
+        String ioBackend = Arrays.stream(args)
+                .filter(arg -> arg.startsWith("--io="))
+                .findAny()
+                .orElse("--io=stream") // stream = default
+                .substring("--io=".length());
+        switch (ioBackend) {
+            case "stream":
+                return IoBackend.STREAM;
+            case "mapped":
+                return IoBackend.MAPPED;
+            default:
+                throw new IllegalArgumentException(
+                        "[error] I/O backend not supported. " +
+                                "Please use --help to view usage."
+                );
+        }
+    }
+
+    public static int getThreadCount(String[] args) {
+        long count = Arrays.stream(args).filter(arg -> arg.startsWith("--threads=")).count();
+        ensure(count <= 1,
+                () -> new IllegalArgumentException("[error] Unexpected use of options. " +
+                        "Please use --help to view usage.")
+        );
+        String threads = Arrays.stream(args)
+                .filter(arg -> arg.startsWith("--threads="))
+                .findAny()
+                .orElse("--threads=1") // single threaded = default
+                .substring("--threads=".length());
+        try {
+            int threadCount = Integer.parseInt(threads);
+            ensure(threadCount > 0,
+                    () -> new IllegalArgumentException("[error] Number of threads must be positive. " +
+                            "Please use --help to view usage."));
+            return threadCount;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("[error] Invalid number of threads. " +
+                    "Please use --help to view usage.");
+        }
+    }
+
+    public static RleStrategy getRleStrategy(String[] args) {
+        long count = Arrays.stream(args).filter(arg -> arg.startsWith("--rle-strategy=")).count();
+        ensure(count <= 1,
+                () -> new IllegalArgumentException("[error] Unexpected use of options. " +
+                        "Please use --help to view usage.")
+        );
+        String rleStrategy = Arrays.stream(args)
+                .filter(arg -> arg.startsWith("--rle-strategy="))
+                .findAny()
+                .orElse("--rle-strategy=greedy") // greedy = default
+                .substring("--rle-strategy=".length());
+        switch (rleStrategy) {
+            case "greedy":
+                return RleStrategy.GREEDY;
+            case "optimal":
+                return RleStrategy.OPTIMAL;
+            default:
+                throw new IllegalArgumentException(
+                        "[error] Rle strategy not supported. " +
+                                "Please use --help to view usage."
+                );
+        }
+    }
+
+    /**
+     * Memory budget of a conversion in bytes (--max-memory=<n>[k|m|g]).
+     * Default: the memory limit of the data segment buffer, at most half of the max. heap size.
+     */
+    public static long getMaxMemory(String[] args) {
+        long count = Arrays.stream(args).filter(arg -> arg.startsWith("--max-memory=")).count();
+        ensure(count <= 1,
+                () -> new IllegalArgumentException("[error] Unexpected use of options. " +
+                        "Please use --help to view usage.")
+        );
+        long maxHeapSize = Runtime.getRuntime().maxMemory();
+        String maxMemory = Arrays.stream(args)
+                .filter(arg -> arg.startsWith("--max-memory="))
+                .findAny()
+                .map(arg -> arg.substring("--max-memory=".length()))
+                .orElse(null);
+        if (maxMemory == null) {
+            return Math.min(DataSegmentBuffer.DEFAULT_MEMORY_LIMIT, maxHeapSize / 2);
+        }
+
+        long budget = parseSize(maxMemory);
+        ensure(budget <= maxHeapSize,
+                () -> new IllegalArgumentException("[error] --max-memory exceeds the max. heap size of " +
+                        maxHeapSize / (1024 * 1024) + " MiB (see java -Xmx). Aborting."));
+        return budget;
+    }
+
+    // size in bytes with an optional unit k, m or g (factor 1024)
+    private static long parseSize(String size) {
+        String lowerCaseSize = size.toLowerCase(Locale.ROOT);
+        long factor = 1;
+        if (lowerCaseSize.endsWith("k")) {
+            factor = 1024;
+        } else if (lowerCaseSize.endsWith("m")) {
+            factor = 1024 * 1024;
+        } else if (lowerCaseSize.endsWith("g")) {
+            factor = 1024 * 1024 * 1024;
+        }
+        String digits = factor == 1 ? lowerCaseSize : lowerCaseSize.substring(0, lowerCaseSize.length() - 1);
+        try {
+            long value = Long.parseLong(digits);
+            ensure(value > 0 && value <= Long.MAX_VALUE / factor,
+                    () -> new IllegalArgumentException("[error] Invalid memory size. " +
+                            "Please use --help to view usage."));
+            return value * factor;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("[error] Invalid memory size. " +
+                    "Please use --help to view usage.");
+        }
+    }
+
     public static void printUsage() {
         System.out.println("----------------------------------------------------------");
         System.out.println();
@@ -139,10 +369,20 @@ public final class CliHelper {
         System.out.println("Options: Overview");
         System.out.println("\t" + "--input=<path/to/file>");
         System.out.println("\t" + "--output=<path/to/file>");
+        System.out.println("\t" + "--input-format=<tga|propra>");
+        System.out.println("\t" + "--output-format=<tga|propra>");
         System.out.println("\t" + "--encode-base-32");
         System.out.println("\t" + "--decode-base-32");
         System.out.println("\t" + "--encode-base-n=<alphabet>");
         System.out.println("\t" + "--decode-base-n");
+        System.out.println("\t" + "--io=<stream|mapped>");
+        System.out.println("\t" + "--threads=<n>");
+        System.out.println("\t" + "--max-memory=<n>[k|m|g]");
+        System.out.println("\t" + "--pipeline");
+        System.out.println("\t" + "--rle-strategy=<greedy|optimal>");
+        System.out.println("\t" + "--batch=<path/to/directory|path/to/manifest>");
+        System.out.println("\t" + "--format=<tga|propra>");
+        System.out.println("\t" + "--daemon=<port>");
         System.out.println("\t" + "--help");
         System.out.println();
         System.out.println("(1) File base N encoding/decoding options");
@@ -157,6 +397,7 @@ public final class CliHelper {
                 "EOL is indicated by '\\n'. ");
         System.out.println("\t" + "Alphabets are not allowed to include '\\n' as character. ");
         System.out.println("\t" + "Alphabet characters need to be unique.");
+        System.out.println("\t" + "--threads=<n>: number of threads encoding/decoding blocks of the file (default 1)");
         System.out.println();
         System.out.println("(2) Image file conversion options");
         System.out.println();
@@ -166,6 +407,55 @@ public final class CliHelper {
         System.out.println();
         System.out.println("\t" + "Supported image formats: .tga, .propra");
         System.out.println();
+        System.out.println("\t" + "Standard input/output: use '-' as path, e.g. --input=- --input-format=tga " +
+                "--output=- --output-format=propra");
+        System.out.println("\t" + "--input-format/--output-format=<tga|propra>: image format, needed for '-' " +
+                "(default: file extension)");
+        System.out.println("\t" + "Propra output to a stream is held back until the conversion succeeded " +
+                "(within --max-memory, the rest in a temporary file).");
+        System.out.println();
+        System.out.println("\t" + "Further options:");
+        System.out.println("\t" + "--io=<stream|mapped>: read files with buffered streams (default) " +
+                "or memory mapped files");
+        System.out.println("\t" + "--threads=<n>: number of threads for rle compression, huffman byte counting and encoding " +
+                "(default 1)");
+        System.out.println("\t" + "--max-memory=<n>[k|m|g]: memory budget of the conversion (default 256m, " +
+                "at most half of the max. heap size).");
+        System.out.println("\t" + "Images of any size are converted within the budget, data that does not fit " +
+                "is buffered in a temporary file.");
+        System.out.println("\t" + "The conversion fails at the start if the budget is too small for the " +
+                "scan line buffers.");
+        System.out.println("\t" + "--pipeline: read, convert and write on separate threads, so disk reads and " +
+                "writes overlap with the conversion (useful for slow disks and network file systems)");
+        System.out.println("\t" + "--rle-strategy=<greedy|optimal>: split scan lines into rle packets " +
+                "greedily (default, fast) or into the fewest bytes (slower, a few bytes smaller)");
+        System.out.println();
+        System.out.println("(3) Batch image conversion options");
+        System.out.println();
+        System.out.println("\t" + "--batch=<path/to/directory|path/to/manifest> --output=<path/to/directory> " +
+                "--format=<tga|propra> [--compression=<compression_type>] [--threads=<n>] " +
+                "[--max-memory=<n>[k|m|g]] [--pipeline] [--rle-strategy=<greedy|optimal>]");
+        System.out.println("\t" + "Converts all .tga and .propra files of the directory or all files listed " +
+                "in the manifest (one path per line).");
+        System.out.println("\t" + "--threads=<n>: number of images converted at the same time (default 1)");
+        System.out.println("\t" + "--max-memory=<n>[k|m|g]: memory budget of the whole batch, shared by " +
+                "the images converted at the same time");
+        System.out.println("\t" + "Failed images are reported, the remaining images are still converted.");
+        System.out.println();
+        System.out.println("(4) Daemon options");
+        System.out.println();
+        System.out.println("\t" + "--daemon=<port> [--threads=<n>] [--max-memory=<n>[k|m|g]]");
+        System.out.println("\t" + "Runs conversion and base N jobs sent by clients to the localhost port " +
+                "(0 = any free port) in one long-lived JVM.");
+        System.out.println("\t" + "--threads=<n>: number of jobs run at the same time (default 1)");
+        System.out.println("\t" + "--max-memory=<n>[k|m|g]: memory budget of the daemon, shared by " +
+                "the jobs run at the same time");
+        System.out.println("\t" + "Client: java propra.imageconverter.DaemonClient --port=<port> " +
+                "<options of (1), (2) or (3)>");
+        System.out.println("\t" + "Stop: java propra.imageconverter.DaemonClient --port=<port> --stop-daemon");
+        System.out.println("\t" + "Only clients of the same user are accepted: they send the token of the daemon " +
+                "from ~/.propra-imageconverter/daemon-<port>.token (readable by this user only).");
+        System.out.println();
         System.out.println("----------------------------------------------------------");
     }
 }
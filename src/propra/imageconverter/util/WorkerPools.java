@@ -0,0 +1,27 @@
+package propra.imageconverter.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The WorkerPools class holds the thread pools of the parallel readers and codecs, one per number of threads.
+ * <p>
+ * All conversions with the same number of threads share one pool (e.g. all images of a batch or of the daemon),
+ * so no pool is created per image. The worker threads are daemon threads and end when they are idle, so the
+ * pools are never shut down. A failed conversion cancels its own tasks instead.
+ * None of the tasks waits for another task of the pool, so a shared pool cannot deadlock.
+ */
+public final class WorkerPools {
+    private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private WorkerPools() {
+    }
+
+    /**
+     * Returns the shared pool with the given number of threads.
+     */
+    public static ForkJoinPool get(int threads) {
+        return POOLS.computeIfAbsent(threads, ForkJoinPool::new);
+    }
+}